@@ -0,0 +1,154 @@
+/*
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/**
+ * BenchmarkData.java
+ * Copyright (C) 2017 University of Waikato, Hamilton, NZ
+ */
+
+package weka.benchmark;
+
+import weka.core.Attribute;
+import weka.core.DenseInstance;
+import weka.core.Instance;
+import weka.core.Instances;
+import weka.core.SparseInstance;
+
+import java.util.ArrayList;
+import java.util.Random;
+
+/**
+ * Generates synthetic datasets for the benchmarks.
+ *
+ * @author FracPete (fracpete at waikato dot ac dot nz)
+ * @version $Revision$
+ */
+public class BenchmarkData {
+
+  /** the number of labels of nominal attributes (and the class). */
+  public final static int NUM_LABELS = 3;
+
+  /** the fraction of non-zero values in sparse data. */
+  public final static double DENSITY = 0.1;
+
+  /**
+   * Generates a dataset with a nominal class attribute as last attribute.
+   * Nominal input attributes are placed at every n-th position to obtain
+   * the requested ratio, i.e., numeric and nominal attributes get mixed.
+   *
+   * @param numRows		the number of rows to generate
+   * @param numAttributes	the number of input attributes
+   * @param nominalRatio	the fraction (0-1) of nominal input attributes
+   * @param sparse		whether to generate sparse instances
+   * @param seed		the seed for the random number generator
+   * @return			the generated dataset
+   */
+  public static Instances generate(int numRows, int numAttributes, double nominalRatio, boolean sparse, long seed) {
+    return generate(numRows, numAttributes, nominalRatio, sparse, false, seed);
+  }
+
+  /**
+   * Generates a dataset with the class attribute as last attribute.
+   * Nominal input attributes are placed at every n-th position to obtain
+   * the requested ratio, i.e., numeric and nominal attributes get mixed.
+   * A numeric class is a noisy linear function of the numeric inputs.
+   *
+   * @param numRows		the number of rows to generate
+   * @param numAttributes	the number of input attributes
+   * @param nominalRatio	the fraction (0-1) of nominal input attributes
+   * @param sparse		whether to generate sparse instances
+   * @param numericClass	whether to generate a numeric class
+   * @param seed		the seed for the random number generator
+   * @return			the generated dataset
+   */
+  public static Instances generate(int numRows, int numAttributes, double nominalRatio, boolean sparse, boolean numericClass, long seed) {
+    Instances			result;
+    ArrayList<Attribute>	atts;
+    ArrayList<String>		labels;
+    boolean[]			nominal;
+    Random			rand;
+    double[]			values;
+    double			target;
+    int				i;
+    int				n;
+    int				numNominal;
+
+    rand = new Random(seed);
+
+    labels = new ArrayList<>();
+    for (i = 0; i < NUM_LABELS; i++)
+      labels.add("v" + i);
+
+    // spread nominal attributes evenly
+    nominal    = new boolean[numAttributes];
+    numNominal = (int) Math.round(numAttributes * nominalRatio);
+    for (i = 0; i < numNominal; i++)
+      nominal[(int) ((long) i * numAttributes / numNominal)] = true;
+
+    atts = new ArrayList<>();
+    for (i = 0; i < numAttributes; i++) {
+      if (nominal[i])
+	atts.add(new Attribute("nom-" + i, new ArrayList<>(labels)));
+      else
+	atts.add(new Attribute("num-" + i));
+    }
+    if (numericClass)
+      atts.add(new Attribute("class"));
+    else
+      atts.add(new Attribute("class", new ArrayList<>(labels)));
+
+    result = new Instances("synthetic-" + numRows + "x" + numAttributes, atts, numRows);
+    result.setClassIndex(result.numAttributes() - 1);
+    for (n = 0; n < numRows; n++) {
+      values = new double[result.numAttributes()];
+      for (i = 0; i < numAttributes; i++) {
+	if (sparse && (rand.nextDouble() >= DENSITY))
+	  continue;
+	if (nominal[i])
+	  values[i] = rand.nextInt(NUM_LABELS);
+	else
+	  values[i] = rand.nextGaussian();
+      }
+      if (numericClass) {
+	target = rand.nextGaussian() * 0.1;
+	for (i = 0; i < numAttributes; i++) {
+	  if (!nominal[i])
+	    target += (i + 1) * values[i];
+	}
+	values[numAttributes] = target;
+      }
+      else {
+	values[numAttributes] = rand.nextInt(NUM_LABELS);
+      }
+      result.add(newInstance(values, sparse));
+    }
+
+    return result;
+  }
+
+  /**
+   * Creates a new instance from the values.
+   *
+   * @param values	the attribute values
+   * @param sparse	whether to create a sparse instance
+   * @return		the instance
+   */
+  protected static Instance newInstance(double[] values, boolean sparse) {
+    if (sparse)
+      return new SparseInstance(1.0, values);
+    else
+      return new DenseInstance(1.0, values);
+  }
+}
@@ -0,0 +1,167 @@
+/*
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/**
+ * ConversionBenchmark.java
+ * Copyright (C) 2017 University of Waikato, Hamilton, NZ
+ */
+
+package weka.benchmark;
+
+import jsat.DataSet;
+import jsat.classifiers.DataPoint;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import weka.core.Instance;
+import weka.core.Instances;
+import weka.core.JSATToWeka;
+import weka.core.WekaToJSAT;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks the conversion between Weka and JSAT data structures.
+ * The dataset conversions report throughput, the row conversions report
+ * latency percentiles. Run with "-prof gc" to obtain allocation rates.
+ *
+ * @author FracPete (fracpete at waikato dot ac dot nz)
+ * @version $Revision$
+ */
+@State(Scope.Benchmark)
+@Fork(1)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+public class ConversionBenchmark {
+
+  /** the number of rows. */
+  @Param({"1000", "100000"})
+  public int numRows;
+
+  /** the number of input attributes. */
+  @Param({"10", "100"})
+  public int numAttributes;
+
+  /** whether to use sparse instances. */
+  @Param({"false", "true"})
+  public boolean sparse;
+
+  /** the fraction of nominal input attributes. */
+  @Param({"0.0", "0.5"})
+  public double nominalRatio;
+
+  /** the Weka data. */
+  protected Instances m_Data;
+
+  /** the JSAT data. */
+  protected DataSet m_DataSet;
+
+  /** the Weka to JSAT converter. */
+  protected WekaToJSAT m_WekaToJSAT;
+
+  /** the JSAT to Weka converter. */
+  protected JSATToWeka m_JSATToWeka;
+
+  /** the next row to convert. */
+  protected int m_Row;
+
+  /**
+   * Generates the data and initializes the converters.
+   *
+   * @throws Exception	if initialization fails
+   */
+  @Setup
+  public void setUp() throws Exception {
+    m_Data       = BenchmarkData.generate(numRows, numAttributes, nominalRatio, sparse, 42);
+    m_WekaToJSAT = new WekaToJSAT();
+    m_WekaToJSAT.initialize(m_Data);
+    m_DataSet    = m_WekaToJSAT.convertDataset(m_Data);
+    m_JSATToWeka = new JSATToWeka();
+    m_JSATToWeka.initialize(m_DataSet);
+    m_Row        = 0;
+  }
+
+  /**
+   * Returns the next row, cycling through the data.
+   *
+   * @return		the row
+   */
+  protected Instance nextRow() {
+    m_Row++;
+    if (m_Row == m_Data.numInstances())
+      m_Row = 0;
+    return m_Data.instance(m_Row);
+  }
+
+  /**
+   * Converts the full Weka dataset.
+   *
+   * @return		the JSAT dataset
+   * @throws Exception	if conversion fails
+   */
+  @Benchmark
+  @BenchmarkMode(Mode.Throughput)
+  @OutputTimeUnit(TimeUnit.SECONDS)
+  public DataSet wekaToJSATConvertDataset() throws Exception {
+    return m_WekaToJSAT.convertDataset(m_Data);
+  }
+
+  /**
+   * Converts a single row, allocating a new data point.
+   *
+   * @return		the data point
+   * @throws Exception	if conversion fails
+   */
+  @Benchmark
+  @BenchmarkMode(Mode.SampleTime)
+  @OutputTimeUnit(TimeUnit.NANOSECONDS)
+  public DataPoint wekaToJSATConvertRow() throws Exception {
+    return m_WekaToJSAT.convertRow(nextRow());
+  }
+
+  /**
+   * Converts a single row into the thread-local buffer.
+   *
+   * @return		the data point
+   * @throws Exception	if conversion fails
+   */
+  @Benchmark
+  @BenchmarkMode(Mode.SampleTime)
+  @OutputTimeUnit(TimeUnit.NANOSECONDS)
+  public DataPoint wekaToJSATConvertRowBuffered() throws Exception {
+    return m_WekaToJSAT.convertRowBuffered(nextRow());
+  }
+
+  /**
+   * Converts the full JSAT dataset.
+   *
+   * @return		the Weka dataset
+   * @throws Exception	if conversion fails
+   */
+  @Benchmark
+  @BenchmarkMode(Mode.Throughput)
+  @OutputTimeUnit(TimeUnit.SECONDS)
+  public Instances jsatToWekaConvertDataset() throws Exception {
+    return m_JSATToWeka.convertDataset(m_DataSet);
+  }
+}
@@ -0,0 +1,125 @@
+/*
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/**
+ * PredictionBenchmark.java
+ * Copyright (C) 2017 University of Waikato, Hamilton, NZ
+ */
+
+package weka.benchmark;
+
+import jsat.classifiers.trees.RandomForest;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import weka.classifiers.meta.JSATClassifier;
+import weka.core.Instances;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks the prediction path of {@link JSATClassifier}, i.e., row
+ * conversion plus the JSAT model. Single predictions report latency
+ * percentiles, batch predictions report throughput. Run with "-prof gc"
+ * to obtain allocation rates.
+ *
+ * @author FracPete (fracpete at waikato dot ac dot nz)
+ * @version $Revision$
+ */
+@State(Scope.Benchmark)
+@Fork(1)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+public class PredictionBenchmark {
+
+  /** the number of trees, kept small to make the conversion visible. */
+  public final static int NUM_TREES = 10;
+
+  /** the number of rows. */
+  @Param({"1000", "10000"})
+  public int numRows;
+
+  /** the number of input attributes. */
+  @Param({"10", "100"})
+  public int numAttributes;
+
+  /** whether to use sparse instances. */
+  @Param({"false", "true"})
+  public boolean sparse;
+
+  /** the fraction of nominal input attributes. */
+  @Param({"0.0", "0.5"})
+  public double nominalRatio;
+
+  /** the Weka data. */
+  protected Instances m_Data;
+
+  /** the trained classifier. */
+  protected JSATClassifier m_Classifier;
+
+  /** the next row to predict. */
+  protected int m_Row;
+
+  /**
+   * Generates the data and trains the classifier.
+   *
+   * @throws Exception	if training fails
+   */
+  @Setup
+  public void setUp() throws Exception {
+    m_Data       = BenchmarkData.generate(numRows, numAttributes, nominalRatio, sparse, 42);
+    m_Classifier = new JSATClassifier();
+    m_Classifier.setClassifier(new RandomForest(NUM_TREES));
+    m_Classifier.buildClassifier(m_Data);
+    m_Row        = 0;
+  }
+
+  /**
+   * Predicts a single row.
+   *
+   * @return		the class distribution
+   * @throws Exception	if prediction fails
+   */
+  @Benchmark
+  @BenchmarkMode(Mode.SampleTime)
+  @OutputTimeUnit(TimeUnit.MICROSECONDS)
+  public double[] distributionForInstance() throws Exception {
+    m_Row++;
+    if (m_Row == m_Data.numInstances())
+      m_Row = 0;
+    return m_Classifier.distributionForInstance(m_Data.instance(m_Row));
+  }
+
+  /**
+   * Predicts the full dataset as batch.
+   *
+   * @return		the class distributions
+   * @throws Exception	if prediction fails
+   */
+  @Benchmark
+  @BenchmarkMode(Mode.Throughput)
+  @OutputTimeUnit(TimeUnit.SECONDS)
+  public double[][] distributionsForInstances() throws Exception {
+    return m_Classifier.distributionsForInstances(m_Data);
+  }
+}
@@ -0,0 +1,129 @@
+/*
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/**
+ * StartupTime.java
+ * Copyright (C) 2017 University of Waikato, Hamilton, NZ
+ */
+
+package weka.benchmark;
+
+import weka.core.JSATInit;
+import weka.core.Utils;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.InputStreamReader;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Measures the time {@link JSATInit} takes, with and without headless mode.
+ * As the initialization only happens once per JVM, every measurement is
+ * performed in a fresh JVM, using the same classpath.
+ * <pre>
+ * java -cp target/benchmarks.jar weka.benchmark.StartupTime -runs 5
+ * </pre>
+ *
+ * @author FracPete (fracpete at waikato dot ac dot nz)
+ * @version $Revision$
+ */
+public class StartupTime {
+
+  /** the option for running the measurement in the current JVM. */
+  public final static String CHILD = "child";
+
+  /**
+   * Initializes JSAT in the current JVM and outputs the time in msec.
+   */
+  protected static void child() {
+    long	start;
+
+    start = System.nanoTime();
+    JSATInit.initialize();
+    System.out.println((System.nanoTime() - start) / 1000000.0);
+  }
+
+  /**
+   * Runs the measurement in a fresh JVM.
+   *
+   * @param headless	whether to use headless mode
+   * @return		the time in msec
+   * @throws Exception	if the JVM fails
+   */
+  protected double measure(boolean headless) throws Exception {
+    List<String>	cmd;
+    Process		proc;
+    BufferedReader	reader;
+    String		line;
+    String		last;
+
+    cmd = new ArrayList<>();
+    cmd.add(System.getProperty("java.home") + File.separator + "bin" + File.separator + "java");
+    cmd.add("-D" + JSATInit.HEADLESS + "=" + headless);
+    cmd.add("-cp");
+    cmd.add(System.getProperty("java.class.path"));
+    cmd.add(StartupTime.class.getName());
+    cmd.add("-" + CHILD);
+    proc = new ProcessBuilder(cmd).redirectErrorStream(true).start();
+    reader = new BufferedReader(new InputStreamReader(proc.getInputStream()));
+    last = null;
+    while ((line = reader.readLine()) != null)
+      last = line;
+    if ((proc.waitFor() != 0) || (last == null))
+      throw new IllegalStateException("Child JVM failed: " + last);
+
+    return Double.parseDouble(last.trim());
+  }
+
+  /**
+   * Runs the comparison.
+   * <br>
+   * Options: [-runs num]
+   *
+   * @param args	the command-line options
+   * @throws Exception	if a measurement fails
+   */
+  public void run(String[] args) throws Exception {
+    String	tmp;
+    int		numRuns;
+    double	msec;
+    int		i;
+
+    tmp = Utils.getOption("runs", args);
+    numRuns = tmp.isEmpty() ? 5 : Integer.parseInt(tmp);
+
+    System.out.println(String.format("%-10s %12s", "mode", "init [ms]"));
+    for (boolean headless: new boolean[]{false, true}) {
+      msec = 0;
+      for (i = 0; i < numRuns; i++)
+	msec += measure(headless);
+      System.out.println(String.format("%-10s %12.1f", headless ? "headless" : "gui", msec / numRuns));
+    }
+  }
+
+  /**
+   * Runs the comparison.
+   *
+   * @param args	the command-line options, see {@link #run(String[])}
+   * @throws Exception	if a measurement fails
+   */
+  public static void main(String[] args) throws Exception {
+    if (Utils.getFlag(CHILD, args))
+      child();
+    else
+      new StartupTime().run(args);
+  }
+}
@@ -0,0 +1,370 @@
+/*
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/**
+ * WrapperOverhead.java
+ * Copyright (C) 2017 University of Waikato, Hamilton, NZ
+ */
+
+package weka.benchmark;
+
+import jsat.DataSet;
+import jsat.classifiers.ClassificationDataSet;
+import jsat.classifiers.Classifier;
+import jsat.classifiers.trees.RandomForest;
+import jsat.clustering.Clusterer;
+import jsat.clustering.kmeans.KMeans;
+import jsat.clustering.kmeans.NaiveKMeans;
+import jsat.linear.Vec;
+import jsat.regression.MultipleLinearRegression;
+import jsat.regression.RegressionDataSet;
+import jsat.regression.Regressor;
+import weka.classifiers.meta.JSATClassifier;
+import weka.classifiers.meta.JSATRegressor;
+import weka.clusterers.JSATClusterer;
+import weka.core.Instances;
+import weka.core.Utils;
+import weka.core.WekaToJSAT;
+import weka.core.converters.ConverterUtils.DataSource;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.util.List;
+
+/**
+ * Compares training and scoring of JSAT algorithms on JSAT data with the
+ * same algorithms wrapped in the Weka wrappers. Reports the conversion time,
+ * training time, scoring throughput and peak heap of each phase separately.
+ * Uses the default algorithms of the wrappers (RandomForest, NaiveKMeans,
+ * MultipleLinearRegression).
+ * <br>
+ * Runs on synthetic data and on any ARFF files supplied on the command-line
+ * (last attribute is used as class), e.g., the datasets bundled with the
+ * unit tests:
+ * <pre>
+ * java -cp target/benchmarks.jar weka.benchmark.WrapperOverhead \
+ *   -rows 10000 -atts 20 ../src/test/java/weka/core/anneal.arff ../src/test/java/weka/core/cpu.arff
+ * </pre>
+ *
+ * @author FracPete (fracpete at waikato dot ac dot nz)
+ * @version $Revision$
+ */
+public class WrapperOverhead {
+
+  /**
+   * A phase to measure.
+   */
+  protected interface Phase {
+
+    /**
+     * Executes the phase.
+     *
+     * @return		the generated object
+     * @throws Exception	if the phase fails
+     */
+    Object run() throws Exception;
+  }
+
+  /** the sink for the scores, prevents the JIT from eliminating the scoring. */
+  protected double m_Sink;
+
+  /**
+   * Returns the sum of the peak usages of the heap memory pools.
+   *
+   * @return		the peak in bytes
+   */
+  protected long peakHeap() {
+    long	result;
+
+    result = 0;
+    for (MemoryPoolMXBean pool: ManagementFactory.getMemoryPoolMXBeans()) {
+      if (pool.getType() == MemoryType.HEAP)
+	result += pool.getPeakUsage().getUsed();
+    }
+
+    return result;
+  }
+
+  /**
+   * Resets the peak usages of the heap memory pools.
+   */
+  protected void resetPeakHeap() {
+    System.gc();
+    for (MemoryPoolMXBean pool: ManagementFactory.getMemoryPoolMXBeans()) {
+      if (pool.getType() == MemoryType.HEAP)
+	pool.resetPeakUsage();
+    }
+  }
+
+  /**
+   * Executes and measures the phase, outputs a line with the statistics.
+   *
+   * @param dataset	the name of the dataset
+   * @param algorithm	the name of the algorithm
+   * @param phase	the name of the phase
+   * @param numRows	the number of rows processed in the phase
+   * @param code	the phase to execute
+   * @return		the object generated by the phase
+   * @throws Exception	if the phase fails
+   */
+  protected Object measure(String dataset, String algorithm, String phase, int numRows, Phase code) throws Exception {
+    Object	result;
+    long	start;
+    double	msec;
+
+    resetPeakHeap();
+    start  = System.nanoTime();
+    result = code.run();
+    msec   = (System.nanoTime() - start) / 1000000.0;
+
+    System.out.println(String.format("%-24s %-14s %-16s %12.1f %14.0f %10.1f",
+      dataset, algorithm, phase, msec, numRows / msec * 1000.0, peakHeap() / 1024.0 / 1024.0));
+
+    return result;
+  }
+
+  /**
+   * Converts the data into a JSAT dataset, the same way the wrappers do.
+   *
+   * @param name	the name of the dataset
+   * @param data	the data to convert
+   * @return		the JSAT dataset
+   * @throws Exception	if conversion fails
+   */
+  protected DataSet convert(String name, final Instances data) throws Exception {
+    final WekaToJSAT	conv;
+
+    conv = new WekaToJSAT();
+    conv.setSkipMissingClass(true);
+    conv.initialize(data);
+    return (DataSet) measure(name, "-", "conversion", data.numInstances(), () -> conv.convertDataset(data));
+  }
+
+  /**
+   * Compares native and wrapped classification.
+   *
+   * @param name	the name of the dataset
+   * @param data	the data to use
+   * @throws Exception	if training or scoring fails
+   */
+  protected void classification(String name, final Instances data) throws Exception {
+    final ClassificationDataSet	dataset;
+    final Classifier		classifier;
+    final JSATClassifier	wrapper;
+    final int			numRows;
+
+    dataset    = (ClassificationDataSet) convert(name, data);
+    numRows    = dataset.getSampleSize();
+    classifier = new RandomForest();
+    measure(name, "RandomForest", "native-train", numRows, () -> {
+      classifier.trainC(dataset);
+      return classifier;
+    });
+    measure(name, "RandomForest", "native-score", numRows, () -> {
+      for (int i = 0; i < numRows; i++)
+	m_Sink += classifier.classify(dataset.getDataPoint(i)).mostLikely();
+      return null;
+    });
+
+    wrapper = new JSATClassifier();
+    measure(name, "RandomForest", "wrapped-train", data.numInstances(), () -> {
+      wrapper.buildClassifier(data);
+      return wrapper;
+    });
+    measure(name, "RandomForest", "wrapped-score", data.numInstances(), () -> {
+      for (int i = 0; i < data.numInstances(); i++)
+	m_Sink += wrapper.distributionForInstance(data.instance(i))[0];
+      return null;
+    });
+  }
+
+  /**
+   * Compares native and wrapped regression.
+   *
+   * @param name	the name of the dataset
+   * @param data	the data to use
+   * @throws Exception	if training or scoring fails
+   */
+  protected void regression(String name, final Instances data) throws Exception {
+    final RegressionDataSet	dataset;
+    final Regressor		regressor;
+    final JSATRegressor		wrapper;
+    final int			numRows;
+
+    dataset   = (RegressionDataSet) convert(name, data);
+    numRows   = dataset.getSampleSize();
+    regressor = new MultipleLinearRegression();
+    measure(name, "MLR", "native-train", numRows, () -> {
+      regressor.train(dataset);
+      return regressor;
+    });
+    measure(name, "MLR", "native-score", numRows, () -> {
+      for (int i = 0; i < numRows; i++)
+	m_Sink += regressor.regress(dataset.getDataPoint(i));
+      return null;
+    });
+
+    wrapper = new JSATRegressor();
+    measure(name, "MLR", "wrapped-train", data.numInstances(), () -> {
+      wrapper.buildClassifier(data);
+      return wrapper;
+    });
+    measure(name, "MLR", "wrapped-score", data.numInstances(), () -> {
+      for (int i = 0; i < data.numInstances(); i++)
+	m_Sink += wrapper.classifyInstance(data.instance(i));
+      return null;
+    });
+  }
+
+  /**
+   * Returns the index of the nearest mean.
+   *
+   * @param means	the means
+   * @param vec		the vector to assign
+   * @return		the index of the nearest mean
+   */
+  protected int nearest(List<Vec> means, Vec vec) {
+    int		result;
+    double	min;
+    double	dist;
+    int		i;
+
+    result = -1;
+    min    = Double.POSITIVE_INFINITY;
+    for (i = 0; i < means.size(); i++) {
+      dist = means.get(i).subtract(vec).pNorm(2);
+      if (dist < min) {
+	min    = dist;
+	result = i;
+      }
+    }
+
+    return result;
+  }
+
+  /**
+   * Compares native and wrapped clustering. The class attribute gets removed.
+   *
+   * @param name	the name of the dataset
+   * @param data	the data to use
+   * @throws Exception	if training or scoring fails
+   */
+  protected void clustering(String name, Instances data) throws Exception {
+    final Instances	input;
+    final DataSet	dataset;
+    final Clusterer	clusterer;
+    final JSATClusterer	wrapper;
+    final int		numRows;
+
+    input = new Instances(data);
+    if (input.classIndex() > -1) {
+      input.setClassIndex(-1);
+      input.deleteAttributeAt(data.classIndex());
+    }
+
+    dataset   = convert(name, input);
+    numRows   = dataset.getSampleSize();
+    clusterer = new NaiveKMeans();
+    measure(name, "NaiveKMeans", "native-train", numRows, () -> clusterer.cluster(dataset, new int[numRows]));
+    if (clusterer instanceof KMeans) {
+      measure(name, "NaiveKMeans", "native-score", numRows, () -> {
+	List<Vec> means = ((KMeans) clusterer).getMeans();
+	for (int i = 0; i < numRows; i++)
+	  m_Sink += nearest(means, dataset.getDataPoint(i).getNumericalValues());
+	return null;
+      });
+    }
+
+    wrapper = new JSATClusterer();
+    measure(name, "NaiveKMeans", "wrapped-train", input.numInstances(), () -> {
+      wrapper.buildClusterer(input);
+      return wrapper;
+    });
+    measure(name, "NaiveKMeans", "wrapped-score", input.numInstances(), () -> {
+      for (int i = 0; i < input.numInstances(); i++)
+	m_Sink += wrapper.clusterInstance(input.instance(i));
+      return null;
+    });
+  }
+
+  /**
+   * Runs all comparisons that the class attribute of the dataset allows.
+   *
+   * @param name	the name of the dataset
+   * @param data	the data to use, with class attribute set
+   * @throws Exception	if a comparison fails
+   */
+  protected void run(String name, Instances data) throws Exception {
+    if (data.classAttribute().isNominal())
+      classification(name, data);
+    else
+      regression(name, data);
+    clustering(name, data);
+  }
+
+  /**
+   * Runs the comparisons.
+   * <br>
+   * Options: [-rows num] [-atts num] [-nominal ratio] [-sparse] [arff ...]
+   *
+   * @param args	the command-line options
+   * @throws Exception	if a comparison fails
+   */
+  public void run(String[] args) throws Exception {
+    String	tmp;
+    int		numRows;
+    int		numAtts;
+    double	nominal;
+    boolean	sparse;
+    Instances	data;
+
+    tmp = Utils.getOption("rows", args);
+    numRows = tmp.isEmpty() ? 10000 : Integer.parseInt(tmp);
+    tmp = Utils.getOption("atts", args);
+    numAtts = tmp.isEmpty() ? 20 : Integer.parseInt(tmp);
+    tmp = Utils.getOption("nominal", args);
+    nominal = tmp.isEmpty() ? 0.25 : Double.parseDouble(tmp);
+    sparse  = Utils.getFlag("sparse", args);
+
+    System.out.println(String.format("%-24s %-14s %-16s %12s %14s %10s",
+      "dataset", "algorithm", "phase", "time [ms]", "rows/sec", "peak [MB]"));
+
+    data = BenchmarkData.generate(numRows, numAtts, nominal, sparse, false, 42);
+    run("synthetic-classification", data);
+    data = BenchmarkData.generate(numRows, numAtts, nominal, sparse, true, 42);
+    run("synthetic-regression", data);
+
+    for (String file: args) {
+      if (file.isEmpty())
+	continue;
+      data = DataSource.read(file);
+      data.setClassIndex(data.numAttributes() - 1);
+      run(data.relationName(), data);
+    }
+
+    System.out.println("sink: " + m_Sink);
+  }
+
+  /**
+   * Runs the comparisons.
+   *
+   * @param args	the command-line options, see {@link #run(String[])}
+   * @throws Exception	if a comparison fails
+   */
+  public static void main(String[] args) throws Exception {
+    new WrapperOverhead().run(args);
+  }
+}
@@ -20,18 +20,21 @@
 
 package weka.classifiers.meta;
 
-import jsat.classifiers.CategoricalResults;
 import jsat.classifiers.ClassificationDataSet;
 import jsat.classifiers.Classifier;
 import jsat.classifiers.DataPoint;
 import jsat.classifiers.trees.RandomForest;
-import nz.ac.waikato.cms.jenericcmdline.DefaultProcessor;
 import weka.classifiers.AbstractClassifier;
+import weka.classifiers.Evaluation;
 import weka.core.Capabilities;
 import weka.core.Capabilities.Capability;
 import weka.core.Instance;
 import weka.core.Instances;
+import weka.core.JSATConversionCache;
+import weka.core.JSATOptionProcessor;
+import weka.core.JSATUtils;
 import weka.core.Option;
+import weka.core.SparseInstance;
 import weka.core.Utils;
 import weka.core.WekaToJSAT;
 
@@ -39,7 +42,12 @@ import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Enumeration;
 import java.util.List;
+import java.util.Random;
 import java.util.Vector;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
 
 /**
  <!-- globalinfo-start -->
@@ -59,9 +67,24 @@ public class JSATClassifier
 
   public final static String CLASSIFIER = "classifier";
 
+  public final static String USE_VIEWS = "use-views";
+
+  public final static String NUM_SLOTS = "num-slots";
+
+  public final static String CONVERSION_CACHE = "conversion-cache";
+
   /** the jsat classifier to use. */
   protected Classifier m_Classifier = getDefaultClassifier();
 
+  /** whether to use views on the Weka data rather than copies. */
+  protected boolean m_UseViews = false;
+
+  /** the number of execution slots (threads) to use. */
+  protected int m_NumExecutionSlots = 1;
+
+  /** whether to use the conversion cache. */
+  protected boolean m_UseConversionCache = false;
+
   /** for converting Weka data. */
   protected WekaToJSAT m_WekaToJSAT = new WekaToJSAT();
 
@@ -89,6 +112,22 @@ public class JSATClassifier
 	+ "\t(default: " + getDefaultClassifier().getClass().getName() + ")",
       CLASSIFIER, 1, "-" + CLASSIFIER + " <classname + options>"));
 
+    result.addElement(new Option(
+      "\tWraps the Weka data rather than copying it when training.\n"
+	+ "\tThe JSAT algorithm must not modify its training data.",
+      USE_VIEWS, 0, "-" + USE_VIEWS));
+
+    result.addElement(new Option(
+      "\tNumber of execution slots for training and batch predictions.\n"
+	+ "\t(default 1 - i.e. no parallelism)\n"
+	+ "\t(use 0 to auto-detect number of cores)",
+      NUM_SLOTS, 1, "-" + NUM_SLOTS + " <num>"));
+
+    result.addElement(new Option(
+      "\tCaches converted rows across builds on (subsets of) the same data,\n"
+	+ "\te.g., the training sets of a cross-validation.",
+      CONVERSION_CACHE, 0, "-" + CONVERSION_CACHE));
+
     result.addAll(Collections.list(super.listOptions()));
 
     return result.elements();
@@ -102,12 +141,19 @@ public class JSATClassifier
    */
   @Override
   public void setOptions(String[] options) throws Exception {
-    DefaultProcessor proc = new DefaultProcessor();
+    JSATOptionProcessor proc = JSATOptionProcessor.getSingleton();
     String tmpStr = Utils.getOption(CLASSIFIER, options);
     if (tmpStr.isEmpty())
       setClassifier(getDefaultClassifier());
     else
       setClassifier((Classifier) proc.fromCommandline(tmpStr));
+    setUseViews(Utils.getFlag(USE_VIEWS, options));
+    tmpStr = Utils.getOption(NUM_SLOTS, options);
+    if (tmpStr.isEmpty())
+      setNumExecutionSlots(1);
+    else
+      setNumExecutionSlots(Integer.parseInt(tmpStr));
+    setUseConversionCache(Utils.getFlag(CONVERSION_CACHE, options));
     super.setOptions(options);
   }
 
@@ -119,7 +165,7 @@ public class JSATClassifier
   @Override
   public String[] getOptions() {
     List<String> result = new ArrayList<>();
-    DefaultProcessor proc = new DefaultProcessor();
+    JSATOptionProcessor proc = JSATOptionProcessor.getSingleton();
 
     try {
       result.add("-" + CLASSIFIER);
@@ -130,6 +176,15 @@ public class JSATClassifier
       e.printStackTrace();
     }
 
+    if (getUseViews())
+      result.add("-" + USE_VIEWS);
+
+    result.add("-" + NUM_SLOTS);
+    result.add("" + getNumExecutionSlots());
+
+    if (getUseConversionCache())
+      result.add("-" + CONVERSION_CACHE);
+
     Collections.addAll(result, super.getOptions());
 
     return result.toArray(new String[result.size()]);
@@ -172,6 +227,103 @@ public class JSATClassifier
     return "The JSAT classifier to use.";
   }
 
+  /**
+   * Sets whether to wrap the Weka data rather than copying it when training.
+   * NB: with views, the JSAT data shares its values with the training
+   * instances, i.e., a JSAT algorithm modifying its data modifies them as well.
+   *
+   * @param value	true if to use views
+   * @see		WekaToJSAT#setUseViews(boolean)
+   */
+  public void setUseViews(boolean value) {
+    m_UseViews = value;
+  }
+
+  /**
+   * Returns whether to wrap the Weka data rather than copying it when training.
+   *
+   * @return		true if to use views
+   * @see		WekaToJSAT#setUseViews(boolean)
+   */
+  public boolean getUseViews() {
+    return m_UseViews;
+  }
+
+  /**
+   * Returns the tip text for this property
+   *
+   * @return tip text for this property suitable for displaying in the
+   *         explorer/experimenter gui
+   */
+  public String useViewsTipText() {
+    return "If enabled, the JSAT data wraps the Weka data rather than copying it, "
+      + "reducing the memory footprint during training; the JSAT algorithm must not "
+      + "modify its training data, as any change is made to the values of the Weka "
+      + "instances passed in for training (and all copies sharing them).";
+  }
+
+  /**
+   * Sets the number of execution slots (threads) to use.
+   *
+   * @param value	the number of slots, 0 to use all cores
+   */
+  public void setNumExecutionSlots(int value) {
+    m_NumExecutionSlots = value;
+  }
+
+  /**
+   * Returns the number of execution slots (threads) to use.
+   *
+   * @return		the number of slots, 0 to use all cores
+   */
+  public int getNumExecutionSlots() {
+    return m_NumExecutionSlots;
+  }
+
+  /**
+   * Returns the tip text for this property
+   *
+   * @return tip text for this property suitable for displaying in the
+   *         explorer/experimenter gui
+   */
+  public String numExecutionSlotsTipText() {
+    return "The number of execution slots (threads) to use for conversion, training and batch predictions; "
+      + "0 uses all available cores.";
+  }
+
+  /**
+   * Sets whether to cache converted rows across builds, so that overlapping
+   * subsets of the same data (e.g., cross-validation folds) only get
+   * converted once.
+   *
+   * @param value	true if to use the cache
+   * @see		JSATConversionCache
+   */
+  public void setUseConversionCache(boolean value) {
+    m_UseConversionCache = value;
+  }
+
+  /**
+   * Returns whether to cache converted rows across builds.
+   *
+   * @return		true if to use the cache
+   * @see		JSATConversionCache
+   */
+  public boolean getUseConversionCache() {
+    return m_UseConversionCache;
+  }
+
+  /**
+   * Returns the tip text for this property
+   *
+   * @return tip text for this property suitable for displaying in the
+   *         explorer/experimenter gui
+   */
+  public String useConversionCacheTipText() {
+    return "If enabled, converted rows are cached across builds on (subsets of) the same data, "
+      + "e.g., the training sets of a cross-validation; not used in conjunction with views.";
+  }
+
   /**
    * Returns the Capabilities of this classifier.
    *
@@ -193,6 +345,9 @@ public class JSATClassifier
 
   /**
    * Performs predictions.
+   * Thread-safe after building: the conversion plan doesn't change and rows
+   * get converted into thread-local buffers, without any locking. Requires
+   * the JSAT model not to modify its state during prediction.
    *
    * @param instance	the instance to classify
    * @return		the class distribution
@@ -200,18 +355,81 @@ public class JSATClassifier
    */
   @Override
   public double[] distributionForInstance(Instance instance) throws Exception {
-    double[]		result;
-    CategoricalResults 	dist;
     DataPoint		data;
-    int			i;
 
-    // convert into JSAT row
-    data = m_WekaToJSAT.convertRow(instance);
+    // convert into JSAT row (thread-local buffer)
+    data = m_WekaToJSAT.convertRowBuffered(instance);
+
+    return JSATUtils.toDistribution(m_Classifier.classify(data));
+  }
+
+  /**
+   * Returns whether the batch prediction is more efficient than
+   * predicting instance by instance.
+   *
+   * @return		true, since batches get predicted in parallel
+   */
+  @Override
+  public boolean implementsMoreEfficientBatchPrediction() {
+    return true;
+  }
+
+  /**
+   * Performs predictions for a batch of instances. The batch gets split into
+   * chunks of the configured batch size, which get processed in parallel
+   * using the configured number of execution slots.
+   *
+   * @param instances	the instances to make predictions for
+   * @return		the predictions, one row per instance
+   * @throws Exception	if prediction fails
+   * @see		#getBatchSize()
+   * @see		#getNumExecutionSlots()
+   */
+  @Override
+  public double[][] distributionsForInstances(final Instances instances) throws Exception {
+    final double[][]		result;
+    int				batchSize;
+    int				i;
+    ExecutorService		executor;
+    List<Future<Void>>		jobs;
+
+    result    = new double[instances.numInstances()][];
+    batchSize = Integer.parseInt(getBatchSize());
+    if (batchSize < 1)
+      batchSize = instances.numInstances();
+
+    // single chunk or thread
+    if ((instances.numInstances() <= batchSize) || (JSATUtils.getNumThreads(m_NumExecutionSlots) == 1)) {
+      for (i = 0; i < instances.numInstances(); i++)
+	result[i] = distributionForInstance(instances.instance(i));
+      return result;
+    }
 
-    dist = m_Classifier.classify(data);
-    result = new double[dist.size()];
-    for (i = 0; i < dist.size(); i++)
-      result[i] = dist.getProb(i);
+    // parallel chunks
+    executor = JSATUtils.newExecutor(m_NumExecutionSlots);
+    try {
+      jobs = new ArrayList<>();
+      for (i = 0; i < instances.numInstances(); i += batchSize) {
+	final int from = i;
+	final int to   = Math.min(i + batchSize, instances.numInstances());
+	jobs.add(executor.submit(new Callable<Void>() {
+	  @Override
+	  public Void call() throws Exception {
+	    for (int n = from; n < to; n++)
+	      result[n] = distributionForInstance(instances.instance(n));
+	    return null;
+	  }
+	}));
+      }
+      for (Future<Void> job: jobs)
+	job.get();
+    }
+    catch (ExecutionException e) {
+      throw JSATUtils.unwrap(e);
+    }
+    finally {
+      executor.shutdownNow();
+    }
 
     return result;
   }
@@ -224,16 +442,207 @@ public class JSATClassifier
    */
   @Override
   public void buildClassifier(Instances instances) throws Exception {
-    getCapabilities().testWithFail(instances);
+    ExecutorService	executor;
 
-    instances = new Instances(instances);
-    instances.deleteWithMissingClass();
+    getCapabilities().testWithFail(instances);
 
-    // convert into JSAT dataset
+    // convert into JSAT dataset (skipping rows with missing class)
+    m_WekaToJSAT.setUseViews(m_UseViews);
+    m_WekaToJSAT.setSkipMissingClass(true);
+    m_WekaToJSAT.setCache(m_UseConversionCache ? JSATConversionCache.getSingleton() : null);
+    m_WekaToJSAT.setParallel(JSATUtils.getNumThreads(m_NumExecutionSlots) > 1);
+    m_WekaToJSAT.setNumThreads(JSATUtils.getNumThreads(m_NumExecutionSlots));
     m_WekaToJSAT.initialize(instances);
     ClassificationDataSet dataset = (ClassificationDataSet) m_WekaToJSAT.convertDataset(instances);
 
     // build
-    m_Classifier.trainC(dataset);
+    if (JSATUtils.getNumThreads(m_NumExecutionSlots) > 1) {
+      executor = JSATUtils.newExecutor(m_NumExecutionSlots);
+      try {
+	m_Classifier.trainC(dataset, executor);
+      }
+      finally {
+	executor.shutdownNow();
+      }
+    }
+    else {
+      m_Classifier.trainC(dataset);
+    }
+  }
+
+  /**
+   * Generates the training set from all but the specified fold. The rows
+   * are shallow copies, sharing the values with the converted rows but
+   * having their own weight, as learners may re-weight their training data
+   * and the folds get trained concurrently.
+   *
+   * @param folds	the folds
+   * @param fold	the fold to leave out
+   * @return		the training set
+   */
+  protected ClassificationDataSet newTrainingSet(List<ClassificationDataSet> folds, int fold) {
+    ClassificationDataSet	result;
+    ClassificationDataSet	current;
+    DataPoint			point;
+    int				i;
+    int				n;
+
+    current = folds.get(0);
+    result  = new ClassificationDataSet(current.getNumNumericalVars(), current.getCategories(), current.getPredicting());
+    for (i = 0; i < folds.size(); i++) {
+      if (i == fold)
+	continue;
+      current = folds.get(i);
+      for (n = 0; n < current.getSampleSize(); n++) {
+	point = current.getDataPoint(n);
+	result.addDataPoint(
+	  new DataPoint(point.getNumericalValues(), point.getCategoricalValues(), point.getCategoricalData(), point.getWeight()),
+	  current.getDataPointCategory(n));
+      }
+    }
+
+    return result;
+  }
+
+  /**
+   * Trains a copy of the JSAT classifier on all but the specified fold and
+   * predicts the rows of the fold.
+   *
+   * @param folds	the folds
+   * @param fold	the fold to predict
+   * @return		the class distributions for the rows of the fold
+   * @throws Exception	if training fails
+   */
+  protected double[][] evaluateFold(List<ClassificationDataSet> folds, int fold) throws Exception {
+    double[][]			result;
+    ClassificationDataSet	train;
+    ClassificationDataSet	test;
+    Classifier			classifier;
+    int				i;
+
+    train      = newTrainingSet(folds, fold);
+    test       = folds.get(fold);
+    classifier = m_Classifier.clone();
+    classifier.trainC(train);
+
+    result = new double[test.getSampleSize()][];
+    for (i = 0; i < test.getSampleSize(); i++)
+      result[i] = JSATUtils.toDistribution(classifier.classify(test.getDataPoint(i)));
+
+    return result;
+  }
+
+  /**
+   * Creates the instance that gets handed to the evaluation, containing only
+   * class value and weight (sparse).
+   *
+   * @param header	the dataset structure
+   * @param classValue	the class value
+   * @param weight	the weight
+   * @return		the instance
+   */
+  protected Instance newEvaluationInstance(Instances header, double classValue, double weight) {
+    Instance	result;
+
+    result = new SparseInstance(weight, new double[]{classValue}, new int[]{header.classIndex()}, header.numAttributes());
+    result.setDataset(header);
+
+    return result;
+  }
+
+  /**
+   * Cross-validates the JSAT classifier natively: the data gets randomized
+   * and stratified like in {@link Evaluation#crossValidateModel},
+   * i.e., the folds are the same for the same random number generator.
+   * Each fold gets converted only once and the folds get trained and
+   * predicted in parallel (using the configured number of execution slots)
+   * on copies of the JSAT classifier. Rows with missing class value are not
+   * evaluated. The wrapper itself does not get trained.
+   *
+   * @param data	the data to cross-validate on
+   * @param numFolds	the number of folds
+   * @param random	the random number generator for randomizing the data
+   * @return		the evaluation with the collected predictions
+   * @throws Exception	if conversion, training or evaluation fails
+   * @see		#getNumExecutionSlots()
+   */
+  public Evaluation crossValidate(Instances data, int numFolds, Random random) throws Exception {
+    Evaluation				result;
+    WekaToJSAT				conv;
+    ClassificationDataSet		train;
+    ClassificationDataSet		test;
+    final List<ClassificationDataSet>	folds;
+    final double[][][]			dists;
+    Instances				copy;
+    Instances				header;
+    Instances				priors;
+    ExecutorService			executor;
+    List<Future<Void>>			jobs;
+    int					i;
+    int					n;
+
+    getCapabilities().testWithFail(data);
+
+    // same folds as Evaluation.crossValidateModel, converting each fold once
+    copy = new Instances(data);
+    copy.randomize(random);
+    copy.stratify(numFolds);
+    conv = new WekaToJSAT();
+    conv.setUseViews(m_UseViews);
+    conv.setSkipMissingClass(true);
+    conv.setParallel(JSATUtils.getNumThreads(m_NumExecutionSlots) > 1);
+    conv.setNumThreads(JSATUtils.getNumThreads(m_NumExecutionSlots));
+    conv.initialize(copy);
+    folds = new ArrayList<>();
+    for (i = 0; i < numFolds; i++)
+      folds.add((ClassificationDataSet) conv.convertDataset(copy.testCV(numFolds, i)));
+
+    // train and predict folds
+    dists = new double[folds.size()][][];
+    if (JSATUtils.getNumThreads(m_NumExecutionSlots) == 1) {
+      for (i = 0; i < folds.size(); i++)
+	dists[i] = evaluateFold(folds, i);
+    }
+    else {
+      executor = JSATUtils.newExecutor(m_NumExecutionSlots);
+      try {
+	jobs = new ArrayList<>();
+	for (i = 0; i < folds.size(); i++) {
+	  final int fold = i;
+	  jobs.add(executor.submit(new Callable<Void>() {
+	    @Override
+	    public Void call() throws Exception {
+	      dists[fold] = evaluateFold(folds, fold);
+	      return null;
+	    }
+	  }));
+	}
+	for (Future<Void> job: jobs)
+	  job.get();
+      }
+      catch (ExecutionException e) {
+	throw JSATUtils.unwrap(e);
+      }
+      finally {
+	executor.shutdownNow();
+      }
+    }
+
+    // record predictions
+    header = new Instances(data, 0);
+    result = new Evaluation(data);
+    for (i = 0; i < folds.size(); i++) {
+      train  = ClassificationDataSet.comineAllBut(folds, i);
+      priors = new Instances(header, train.getSampleSize());
+      for (n = 0; n < train.getSampleSize(); n++)
+	priors.add(newEvaluationInstance(header, train.getDataPointCategory(n), train.getDataPoint(n).getWeight()));
+      result.setPriors(priors);
+      test = folds.get(i);
+      for (n = 0; n < test.getSampleSize(); n++)
+	result.evaluateModelOnceAndRecordPrediction(
+	  dists[i][n], newEvaluationInstance(header, test.getDataPointCategory(n), test.getDataPoint(n).getWeight()));
+    }
+
+    return result;
   }
 }
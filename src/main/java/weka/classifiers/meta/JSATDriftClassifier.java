@@ -0,0 +1,414 @@
+/*
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/**
+ * JSATDriftClassifier.java
+ * Copyright (C) 2017 University of Waikato, Hamilton, NZ
+ */
+
+package weka.classifiers.meta;
+
+import jsat.classifiers.Classifier;
+import jsat.classifiers.DataPoint;
+import jsat.driftdetectors.BaseDriftDetector;
+import jsat.driftdetectors.DDM;
+import weka.core.Instance;
+import weka.core.Instances;
+import weka.core.JSATOptionProcessor;
+import weka.core.JSATUtils;
+import weka.core.Option;
+import weka.core.Utils;
+
+import java.io.Serializable;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Vector;
+
+/**
+ <!-- globalinfo-start -->
+ <!-- globalinfo-end -->
+ *
+ <!-- technical-bibtex-start -->
+ <!-- technical-bibtex-end -->
+ *
+ <!-- options-start -->
+ <!-- options-end -->
+ *
+ * @author FracPete (fracpete at waikato dot ac dot nz)
+ * @version $Revision$
+ */
+public class JSATDriftClassifier
+  extends JSATUpdateableClassifier {
+
+  public final static String DETECTOR = "detector";
+
+  public final static String WINDOW_SIZE = "window-size";
+
+  /**
+   * Container for a row in the window of recent rows.
+   */
+  protected static class WindowRow
+    implements Serializable {
+
+    private static final long serialVersionUID = 2400233829131094245L;
+
+    /** the converted row. */
+    public DataPoint point;
+
+    /** the class value. */
+    public int classValue;
+
+    /**
+     * Initializes the container.
+     *
+     * @param point	the converted row
+     * @param classValue	the class value
+     */
+    public WindowRow(DataPoint point, int classValue) {
+      this.point      = point;
+      this.classValue = classValue;
+    }
+  }
+
+  /** the drift detector to use (template). */
+  protected BaseDriftDetector m_Detector = getDefaultDetector();
+
+  /** the maximum number of recent rows to keep for retraining. */
+  protected int m_WindowSize = 1000;
+
+  /** the drift detector in use. */
+  protected BaseDriftDetector m_ActualDetector;
+
+  /** the classifier in use (the classifier property only acts as template). */
+  protected Classifier m_ActualClassifier;
+
+  /** the window of recent rows. */
+  protected ArrayDeque<WindowRow> m_Window;
+
+  /** the number of rows the classifier has been updated with. */
+  protected int m_NumUpdates;
+
+  /** the number of drifts detected. */
+  protected int m_NumDrifts;
+
+  /**
+   * Returns a string describing classifier
+   *
+   * @return a description suitable for displaying in the explorer/experimenter
+   *         gui
+   */
+  @Override
+  public String globalInfo() {
+    return "Wrapper around an updateable JSAT classifier for data streams with concept drift.\n"
+      + "Each incoming row is first predicted and the error fed into a JSAT drift detector. "
+      + "Once drift is detected, the classifier gets reset and retrained on the rows from the "
+      + "window of recent rows that arrived since the drift started.\n"
+      + "The JSAT classifier must implement " + jsat.classifiers.UpdateableClassifier.class.getName() + ".";
+  }
+
+  /**
+   * Returns an enumeration describing the available options.
+   *
+   * @return an enumeration of all the available options.
+   */
+  @Override
+  public Enumeration listOptions() {
+    Vector result = new Vector();
+
+    result.addElement(new Option(
+      "\tThe JSAT drift detector to use.\n"
+	+ "\t(default: " + getDefaultDetector().getClass().getName() + ")",
+      DETECTOR, 1, "-" + DETECTOR + " <classname + options>"));
+
+    result.addElement(new Option(
+      "\tThe maximum number of recent rows to keep for retraining.\n"
+	+ "\t(default: 1000)",
+      WINDOW_SIZE, 1, "-" + WINDOW_SIZE + " <num>"));
+
+    result.addAll(Collections.list(super.listOptions()));
+
+    return result.elements();
+  }
+
+  /**
+   * Sets the options.
+   *
+   * @param options	the options
+   * @throws Exception	if setting fails
+   */
+  @Override
+  public void setOptions(String[] options) throws Exception {
+    JSATOptionProcessor proc = JSATOptionProcessor.getSingleton();
+    String tmpStr = Utils.getOption(DETECTOR, options);
+    if (tmpStr.isEmpty())
+      setDetector(getDefaultDetector());
+    else
+      setDetector((BaseDriftDetector) proc.fromCommandline(tmpStr));
+    tmpStr = Utils.getOption(WINDOW_SIZE, options);
+    if (tmpStr.isEmpty())
+      setWindowSize(1000);
+    else
+      setWindowSize(Integer.parseInt(tmpStr));
+    super.setOptions(options);
+  }
+
+  /**
+   * Returns the options.
+   *
+   * @return		the options
+   */
+  @Override
+  public String[] getOptions() {
+    List<String> result = new ArrayList<>();
+    JSATOptionProcessor proc = JSATOptionProcessor.getSingleton();
+
+    try {
+      result.add("-" + DETECTOR);
+      result.add(proc.toCommandline(getDetector()));
+    }
+    catch (Exception e) {
+      System.err.println("Failed to retrieve commandline for detector: " + e);
+      e.printStackTrace();
+    }
+
+    result.add("-" + WINDOW_SIZE);
+    result.add("" + getWindowSize());
+
+    Collections.addAll(result, super.getOptions());
+
+    return result.toArray(new String[result.size()]);
+  }
+
+  /**
+   * Returns the default drift detector.
+   *
+   * @return		the default
+   */
+  protected BaseDriftDetector getDefaultDetector() {
+    return new DDM();
+  }
+
+  /**
+   * Sets the drift detector.
+   *
+   * @param value	the detector
+   */
+  public void setDetector(BaseDriftDetector value) {
+    m_Detector = value;
+  }
+
+  /**
+   * Returns the drift detector.
+   *
+   * @return		the detector
+   */
+  public BaseDriftDetector getDetector() {
+    return m_Detector;
+  }
+
+  /**
+   * Returns the tip text for this property
+   *
+   * @return tip text for this property suitable for displaying in the
+   *         explorer/experimenter gui
+   */
+  public String detectorTipText() {
+    return "The JSAT drift detector to use, gets fed with 1 for errors and 0 for correct predictions.";
+  }
+
+  /**
+   * Sets the maximum number of recent rows to keep for retraining.
+   *
+   * @param value	the number of rows
+   */
+  public void setWindowSize(int value) {
+    m_WindowSize = value;
+  }
+
+  /**
+   * Returns the maximum number of recent rows to keep for retraining.
+   *
+   * @return		the number of rows
+   */
+  public int getWindowSize() {
+    return m_WindowSize;
+  }
+
+  /**
+   * Returns the tip text for this property
+   *
+   * @return tip text for this property suitable for displaying in the
+   *         explorer/experimenter gui
+   */
+  public String windowSizeTipText() {
+    return "The maximum number of recent rows to keep for retraining after a drift.";
+  }
+
+  /**
+   * Returns the number of drifts detected since the last build.
+   *
+   * @return		the number of drifts
+   */
+  public int getNumDrifts() {
+    return m_NumDrifts;
+  }
+
+  /**
+   * Returns the JSAT classifier in use as updateable classifier.
+   *
+   * @return		the classifier
+   * @throws IllegalStateException	if not built yet or the classifier is not updateable
+   */
+  @Override
+  protected jsat.classifiers.UpdateableClassifier getUpdateableClassifier() {
+    if (m_ActualClassifier == null)
+      throw new IllegalStateException("No model built yet!");
+    if (!(m_ActualClassifier instanceof jsat.classifiers.UpdateableClassifier))
+      throw new IllegalStateException(
+	"JSAT classifier does not implement " + jsat.classifiers.UpdateableClassifier.class.getName()
+	  + ": " + m_ActualClassifier.getClass().getName());
+    return (jsat.classifiers.UpdateableClassifier) m_ActualClassifier;
+  }
+
+  /**
+   * Builds the classifier on the dataset, processing the rows one by one.
+   * Resets the drift detector and the window of recent rows.
+   *
+   * @param instances	the dataset to use
+   * @throws Exception	if the build fails
+   */
+  @Override
+  public void buildClassifier(Instances instances) throws Exception {
+    m_ActualClassifier = m_Classifier.clone();
+    m_ActualDetector   = m_Detector.clone();
+    m_Window           = new ArrayDeque<>();
+    m_NumUpdates       = 0;
+    m_NumDrifts        = 0;
+
+    super.buildClassifier(instances);
+  }
+
+  /**
+   * Resets the classifier and retrains it on the rows of the window that
+   * arrived since the drift started.
+   *
+   * @throws Exception	if retraining fails
+   */
+  protected void handleDrift() throws Exception {
+    Iterator<WindowRow>	iter;
+    WindowRow		row;
+    int			numRows;
+    int			i;
+
+    m_NumDrifts++;
+    numRows = Math.min(m_Window.size(), Math.max(1, m_ActualDetector.getDriftAge()));
+
+    // reset
+    m_ActualClassifier = m_Classifier.clone();
+    getUpdateableClassifier().setUp(
+      m_WekaToJSAT.getInputCategoricalData(),
+      m_WekaToJSAT.getNumNumericInputs(),
+      m_WekaToJSAT.getClassCategoricalData());
+
+    // retrain on most recent rows, oldest first
+    while (m_Window.size() > numRows)
+      m_Window.removeFirst();
+    iter = m_Window.iterator();
+    for (i = 0; i < numRows; i++) {
+      row = iter.next();
+      getUpdateableClassifier().update(row.point, row.classValue);
+    }
+    m_NumUpdates = numRows;
+
+    m_ActualDetector.driftHandled();
+  }
+
+  /**
+   * Updates the classifier with the given instance. The instance gets
+   * predicted first, feeding the error into the drift detector. Instances
+   * with missing class value get skipped.
+   *
+   * @param instance	the new training instance to include in the model
+   * @throws Exception	if the instance could not be incorporated in the model
+   */
+  @Override
+  public void updateClassifier(Instance instance) throws Exception {
+    DataPoint	point;
+    int		classValue;
+    boolean	error;
+
+    if (instance.classIsMissing())
+      return;
+
+    // the classifier and the window may keep the row, so no buffer
+    point      = m_WekaToJSAT.convertRow(instance);
+    classValue = (int) instance.classValue();
+
+    // test
+    if (m_NumUpdates > 0) {
+      error = (m_ActualClassifier.classify(point).mostLikely() != classValue);
+      m_ActualDetector.addSample(error ? 1.0 : 0.0, null);
+    }
+
+    // train
+    m_Window.addLast(new WindowRow(point, classValue));
+    while (m_Window.size() > m_WindowSize)
+      m_Window.removeFirst();
+    getUpdateableClassifier().update(point, classValue);
+    m_NumUpdates++;
+
+    if (m_ActualDetector.isDrifting())
+      handleDrift();
+  }
+
+  /**
+   * Performs predictions.
+   *
+   * @param instance	the instance to classify
+   * @return		the class distribution
+   * @throws Exception	if prediction fails
+   */
+  @Override
+  public double[] distributionForInstance(Instance instance) throws Exception {
+    DataPoint		data;
+
+    if (m_ActualClassifier == null)
+      throw new IllegalStateException("No model built yet!");
+
+    // convert into JSAT row (thread-local buffer)
+    data = m_WekaToJSAT.convertRowBuffered(instance);
+
+    return JSATUtils.toDistribution(m_ActualClassifier.classify(data));
+  }
+
+  /**
+   * Returns a short description of the model.
+   *
+   * @return		the description
+   */
+  @Override
+  public String toString() {
+    if (m_ActualDetector == null)
+      return "No model built yet!";
+
+    return m_ActualClassifier.getClass().getName() + "\n"
+      + "Drift detector: " + m_ActualDetector.getClass().getName() + "\n"
+      + "Drifts detected: " + m_NumDrifts;
+  }
+}
@@ -0,0 +1,486 @@
+/*
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/**
+ * JSATPipeline.java
+ * Copyright (C) 2017 University of Waikato, Hamilton, NZ
+ */
+
+package weka.classifiers.meta;
+
+import jsat.DataSet;
+import jsat.classifiers.ClassificationDataSet;
+import jsat.classifiers.Classifier;
+import jsat.classifiers.DataPoint;
+import jsat.classifiers.trees.RandomForest;
+import jsat.datatransform.DataTransform;
+import jsat.regression.MultipleLinearRegression;
+import jsat.regression.RegressionDataSet;
+import jsat.regression.Regressor;
+import weka.classifiers.AbstractClassifier;
+import weka.core.Capabilities;
+import weka.core.Capabilities.Capability;
+import weka.core.Instance;
+import weka.core.Instances;
+import weka.core.JSATOptionProcessor;
+import weka.core.JSATUtils;
+import weka.core.Option;
+import weka.core.Utils;
+import weka.core.WekaToJSAT;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.List;
+import java.util.Vector;
+import java.util.concurrent.ExecutorService;
+
+/**
+ <!-- globalinfo-start -->
+ <!-- globalinfo-end -->
+ *
+ <!-- technical-bibtex-start -->
+ <!-- technical-bibtex-end -->
+ *
+ <!-- options-start -->
+ <!-- options-end -->
+ *
+ * @author FracPete (fracpete at waikato dot ac dot nz)
+ * @version $Revision$
+ */
+public class JSATPipeline
+  extends AbstractClassifier {
+
+  public final static String TRANSFORM = "transform";
+
+  public final static String CLASSIFIER = "classifier";
+
+  public final static String REGRESSOR = "regressor";
+
+  public final static String NUM_SLOTS = "num-slots";
+
+  /** the jsat transforms to apply (templates). */
+  protected DataTransform[] m_Transforms = getDefaultTransforms();
+
+  /** the jsat classifier to use for nominal classes. */
+  protected Classifier m_Classifier = getDefaultClassifier();
+
+  /** the jsat regressor to use for numeric classes. */
+  protected Regressor m_Regressor = getDefaultRegressor();
+
+  /** the number of execution slots (threads) to use. */
+  protected int m_NumExecutionSlots = 1;
+
+  /** the fitted transforms. */
+  protected DataTransform[] m_ActualTransforms;
+
+  /** whether the class is nominal. */
+  protected boolean m_NominalClass;
+
+  /** for converting Weka data. */
+  protected WekaToJSAT m_WekaToJSAT = new WekaToJSAT();
+
+  /**
+   * Returns a string describing classifier
+   *
+   * @return a description suitable for displaying in the explorer/experimenter
+   *         gui
+   */
+  public String globalInfo() {
+    return "Pipeline of JSAT data transformations followed by a JSAT classifier (nominal class) "
+      + "or regressor (numeric class).\n"
+      + "The data gets converted only once and stays in JSAT form between the stages, "
+      + "both for training and prediction.";
+  }
+
+  /**
+   * Returns an enumeration describing the available options.
+   *
+   * @return an enumeration of all the available options.
+   */
+  @Override
+  public Enumeration listOptions() {
+    Vector result = new Vector();
+
+    result.addElement(new Option(
+      "\tThe JSAT transformation to apply, can be supplied multiple times.\n"
+	+ "\t(default: none)",
+      TRANSFORM, 1, "-" + TRANSFORM + " <classname + options>"));
+
+    result.addElement(new Option(
+      "\tThe JSAT classifier to use for nominal classes.\n"
+	+ "\t(default: " + getDefaultClassifier().getClass().getName() + ")",
+      CLASSIFIER, 1, "-" + CLASSIFIER + " <classname + options>"));
+
+    result.addElement(new Option(
+      "\tThe JSAT regressor to use for numeric classes.\n"
+	+ "\t(default: " + getDefaultRegressor().getClass().getName() + ")",
+      REGRESSOR, 1, "-" + REGRESSOR + " <classname + options>"));
+
+    result.addElement(new Option(
+      "\tNumber of execution slots for training.\n"
+	+ "\t(default 1 - i.e. no parallelism)\n"
+	+ "\t(use 0 to auto-detect number of cores)",
+      NUM_SLOTS, 1, "-" + NUM_SLOTS + " <num>"));
+
+    result.addAll(Collections.list(super.listOptions()));
+
+    return result.elements();
+  }
+
+  /**
+   * Sets the options.
+   *
+   * @param options	the options
+   * @throws Exception	if setting fails
+   */
+  @Override
+  public void setOptions(String[] options) throws Exception {
+    JSATOptionProcessor proc = JSATOptionProcessor.getSingleton();
+    List<DataTransform> transforms = new ArrayList<>();
+    String tmpStr;
+    do {
+      tmpStr = Utils.getOption(TRANSFORM, options);
+      if (!tmpStr.isEmpty())
+	transforms.add((DataTransform) proc.fromCommandline(tmpStr));
+    }
+    while (!tmpStr.isEmpty());
+    setTransforms(transforms.toArray(new DataTransform[transforms.size()]));
+    tmpStr = Utils.getOption(CLASSIFIER, options);
+    if (tmpStr.isEmpty())
+      setClassifier(getDefaultClassifier());
+    else
+      setClassifier((Classifier) proc.fromCommandline(tmpStr));
+    tmpStr = Utils.getOption(REGRESSOR, options);
+    if (tmpStr.isEmpty())
+      setRegressor(getDefaultRegressor());
+    else
+      setRegressor((Regressor) proc.fromCommandline(tmpStr));
+    tmpStr = Utils.getOption(NUM_SLOTS, options);
+    if (tmpStr.isEmpty())
+      setNumExecutionSlots(1);
+    else
+      setNumExecutionSlots(Integer.parseInt(tmpStr));
+    super.setOptions(options);
+  }
+
+  /**
+   * Returns the options.
+   *
+   * @return		the options
+   */
+  @Override
+  public String[] getOptions() {
+    List<String> result = new ArrayList<>();
+    JSATOptionProcessor proc = JSATOptionProcessor.getSingleton();
+
+    try {
+      for (DataTransform transform: getTransforms()) {
+	result.add("-" + TRANSFORM);
+	result.add(proc.toCommandline(transform));
+      }
+      result.add("-" + CLASSIFIER);
+      result.add(proc.toCommandline(getClassifier()));
+      result.add("-" + REGRESSOR);
+      result.add(proc.toCommandline(getRegressor()));
+    }
+    catch (Exception e) {
+      System.err.println("Failed to retrieve commandline for pipeline: " + e);
+      e.printStackTrace();
+    }
+
+    result.add("-" + NUM_SLOTS);
+    result.add("" + getNumExecutionSlots());
+
+    Collections.addAll(result, super.getOptions());
+
+    return result.toArray(new String[result.size()]);
+  }
+
+  /**
+   * Returns the default transformations.
+   *
+   * @return		the default
+   */
+  protected DataTransform[] getDefaultTransforms() {
+    return new DataTransform[0];
+  }
+
+  /**
+   * Sets the transformations to apply.
+   *
+   * @param value	the transformations
+   */
+  public void setTransforms(DataTransform[] value) {
+    m_Transforms = value;
+  }
+
+  /**
+   * Returns the transformations to apply.
+   *
+   * @return		the transformations
+   */
+  public DataTransform[] getTransforms() {
+    return m_Transforms;
+  }
+
+  /**
+   * Returns the tip text for this property
+   *
+   * @return tip text for this property suitable for displaying in the
+   *         explorer/experimenter gui
+   */
+  public String transformsTipText() {
+    return "The JSAT transformations to apply, in the given order.";
+  }
+
+  /**
+   * Returns the default classification algorithm.
+   *
+   * @return		the default
+   */
+  protected Classifier getDefaultClassifier() {
+    return new RandomForest();
+  }
+
+  /**
+   * Sets the classification algorithm.
+   *
+   * @param value	the algorithm
+   */
+  public void setClassifier(Classifier value) {
+    m_Classifier = value;
+  }
+
+  /**
+   * Returns the classification algorithm.
+   *
+   * @return		the algorithm
+   */
+  public Classifier getClassifier() {
+    return m_Classifier;
+  }
+
+  /**
+   * Returns the tip text for this property
+   *
+   * @return tip text for this property suitable for displaying in the
+   *         explorer/experimenter gui
+   */
+  public String classifierTipText() {
+    return "The JSAT classifier to use for nominal classes.";
+  }
+
+  /**
+   * Returns the default regression algorithm.
+   *
+   * @return		the default
+   */
+  protected Regressor getDefaultRegressor() {
+    return new MultipleLinearRegression();
+  }
+
+  /**
+   * Sets the regression algorithm.
+   *
+   * @param value	the algorithm
+   */
+  public void setRegressor(Regressor value) {
+    m_Regressor = value;
+  }
+
+  /**
+   * Returns the regression algorithm.
+   *
+   * @return		the algorithm
+   */
+  public Regressor getRegressor() {
+    return m_Regressor;
+  }
+
+  /**
+   * Returns the tip text for this property
+   *
+   * @return tip text for this property suitable for displaying in the
+   *         explorer/experimenter gui
+   */
+  public String regressorTipText() {
+    return "The JSAT regressor to use for numeric classes.";
+  }
+
+  /**
+   * Sets the number of execution slots (threads) to use.
+   *
+   * @param value	the number of slots, 0 to use all cores
+   */
+  public void setNumExecutionSlots(int value) {
+    m_NumExecutionSlots = value;
+  }
+
+  /**
+   * Returns the number of execution slots (threads) to use.
+   *
+   * @return		the number of slots, 0 to use all cores
+   */
+  public int getNumExecutionSlots() {
+    return m_NumExecutionSlots;
+  }
+
+  /**
+   * Returns the tip text for this property
+   *
+   * @return tip text for this property suitable for displaying in the
+   *         explorer/experimenter gui
+   */
+  public String numExecutionSlotsTipText() {
+    return "The number of execution slots (threads) to use for conversion and training; "
+      + "0 uses all available cores.";
+  }
+
+  /**
+   * Returns the Capabilities of this classifier.
+   *
+   * @return the capabilities of this object
+   * @see Capabilities
+   */
+  @Override
+  public Capabilities getCapabilities() {
+    Capabilities	result;
+
+    result = super.getCapabilities();
+    result.disableAllClasses();
+    result.disableAllClassDependencies();
+    result.enable(Capability.NOMINAL_CLASS);
+    result.enable(Capability.NUMERIC_CLASS);
+    result.enable(Capability.MISSING_CLASS_VALUES);
+
+    return result;
+  }
+
+  /**
+   * Pushes the converted row through the fitted transformations.
+   *
+   * @param row		the converted row
+   * @return		the transformed row
+   */
+  protected DataPoint transform(DataPoint row) {
+    DataPoint	result;
+
+    result = row;
+    for (DataTransform transform: m_ActualTransforms)
+      result = transform.transform(result);
+
+    return result;
+  }
+
+  /**
+   * Performs predictions.
+   *
+   * @param instance	the instance to classify
+   * @return		the class distribution
+   * @throws Exception	if prediction fails
+   */
+  @Override
+  public double[] distributionForInstance(Instance instance) throws Exception {
+    DataPoint		data;
+
+    // convert once (thread-local buffer), the transforms generate new rows
+    data = transform(m_WekaToJSAT.convertRowBuffered(instance));
+
+    if (!m_NominalClass)
+      return new double[]{m_Regressor.regress(data)};
+
+    return JSATUtils.toDistribution(m_Classifier.classify(data));
+  }
+
+  /**
+   * Builds the pipeline on the dataset: converts the data, fits the
+   * transformations one after the other while applying them in place and
+   * then trains the classifier/regressor.
+   *
+   * @param instances	the dataset to use
+   * @throws Exception	if the build fails
+   */
+  @Override
+  public void buildClassifier(Instances instances) throws Exception {
+    DataSet		dataset;
+    ExecutorService	executor;
+    int			i;
+
+    getCapabilities().testWithFail(instances);
+
+    // convert into JSAT dataset (copies, as the transforms modify the rows)
+    m_NominalClass = instances.classAttribute().isNominal();
+    m_WekaToJSAT.setSkipMissingClass(true);
+    m_WekaToJSAT.setParallel(JSATUtils.getNumThreads(m_NumExecutionSlots) > 1);
+    m_WekaToJSAT.setNumThreads(JSATUtils.getNumThreads(m_NumExecutionSlots));
+    m_WekaToJSAT.initialize(instances);
+    dataset = m_WekaToJSAT.convertDataset(instances);
+
+    // transform
+    m_ActualTransforms = new DataTransform[m_Transforms.length];
+    for (i = 0; i < m_Transforms.length; i++) {
+      m_ActualTransforms[i] = m_Transforms[i].clone();
+      m_ActualTransforms[i].fit(dataset);
+      dataset.applyTransform(m_ActualTransforms[i], true);
+    }
+
+    // build
+    executor = null;
+    if (JSATUtils.getNumThreads(m_NumExecutionSlots) > 1)
+      executor = JSATUtils.newExecutor(m_NumExecutionSlots);
+    try {
+      if (m_NominalClass) {
+	if (executor != null)
+	  m_Classifier.trainC((ClassificationDataSet) dataset, executor);
+	else
+	  m_Classifier.trainC((ClassificationDataSet) dataset);
+      }
+      else {
+	if (executor != null)
+	  m_Regressor.train((RegressionDataSet) dataset, executor);
+	else
+	  m_Regressor.train((RegressionDataSet) dataset);
+      }
+    }
+    finally {
+      if (executor != null)
+	executor.shutdownNow();
+    }
+  }
+
+  /**
+   * Returns a short description of the model.
+   *
+   * @return		the description
+   */
+  @Override
+  public String toString() {
+    StringBuilder	result;
+
+    if (m_ActualTransforms == null)
+      return "No model built yet!";
+
+    result = new StringBuilder();
+    for (DataTransform transform: m_ActualTransforms)
+      result.append(transform.getClass().getName()).append("\n");
+    if (m_NominalClass)
+      result.append(m_Classifier.getClass().getName());
+    else
+      result.append(m_Regressor.getClass().getName());
+
+    return result.toString();
+  }
+}
@@ -24,12 +24,14 @@ import jsat.classifiers.DataPoint;
 import jsat.regression.MultipleLinearRegression;
 import jsat.regression.RegressionDataSet;
 import jsat.regression.Regressor;
-import nz.ac.waikato.cms.jenericcmdline.DefaultProcessor;
 import weka.classifiers.AbstractClassifier;
 import weka.core.Capabilities;
 import weka.core.Capabilities.Capability;
 import weka.core.Instance;
 import weka.core.Instances;
+import weka.core.JSATConversionCache;
+import weka.core.JSATOptionProcessor;
+import weka.core.JSATUtils;
 import weka.core.Option;
 import weka.core.Utils;
 import weka.core.WekaToJSAT;
@@ -39,6 +41,10 @@ import java.util.Collections;
 import java.util.Enumeration;
 import java.util.List;
 import java.util.Vector;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
 
 /**
  <!-- globalinfo-start -->
@@ -58,9 +64,24 @@ public class JSATRegressor
 
   public final static String REGRESSOR = "regressor";
 
+  public final static String USE_VIEWS = "use-views";
+
+  public final static String NUM_SLOTS = "num-slots";
+
+  public final static String CONVERSION_CACHE = "conversion-cache";
+
   /** the jsat regressor to use. */
   protected Regressor m_Regressor = getDefaultRegressor();
 
+  /** whether to use views on the Weka data rather than copies. */
+  protected boolean m_UseViews = false;
+
+  /** the number of execution slots (threads) to use. */
+  protected int m_NumExecutionSlots = 1;
+
+  /** whether to use the conversion cache. */
+  protected boolean m_UseConversionCache = false;
+
   /** for converting Weka data. */
   protected WekaToJSAT m_WekaToJSAT = new WekaToJSAT();
 
@@ -88,6 +109,22 @@ public class JSATRegressor
 	+ "\t(default: " + getDefaultRegressor().getClass().getName() + ")",
       REGRESSOR, 1, "-" + REGRESSOR + " <classname + options>"));
 
+    result.addElement(new Option(
+      "\tWraps the Weka data rather than copying it when training.\n"
+	+ "\tThe JSAT algorithm must not modify its training data.",
+      USE_VIEWS, 0, "-" + USE_VIEWS));
+
+    result.addElement(new Option(
+      "\tNumber of execution slots for training and batch predictions.\n"
+	+ "\t(default 1 - i.e. no parallelism)\n"
+	+ "\t(use 0 to auto-detect number of cores)",
+      NUM_SLOTS, 1, "-" + NUM_SLOTS + " <num>"));
+
+    result.addElement(new Option(
+      "\tCaches converted rows across builds on (subsets of) the same data,\n"
+	+ "\te.g., the training sets of a cross-validation.",
+      CONVERSION_CACHE, 0, "-" + CONVERSION_CACHE));
+
     result.addAll(Collections.list(super.listOptions()));
 
     return result.elements();
@@ -101,12 +138,19 @@ public class JSATRegressor
    */
   @Override
   public void setOptions(String[] options) throws Exception {
-    DefaultProcessor proc = new DefaultProcessor();
+    JSATOptionProcessor proc = JSATOptionProcessor.getSingleton();
     String tmpStr = Utils.getOption(REGRESSOR, options);
     if (tmpStr.isEmpty())
       setRegressor(getDefaultRegressor());
     else
       setRegressor((Regressor) proc.fromCommandline(tmpStr));
+    setUseViews(Utils.getFlag(USE_VIEWS, options));
+    tmpStr = Utils.getOption(NUM_SLOTS, options);
+    if (tmpStr.isEmpty())
+      setNumExecutionSlots(1);
+    else
+      setNumExecutionSlots(Integer.parseInt(tmpStr));
+    setUseConversionCache(Utils.getFlag(CONVERSION_CACHE, options));
     super.setOptions(options);
   }
 
@@ -118,7 +162,7 @@ public class JSATRegressor
   @Override
   public String[] getOptions() {
     List<String> result = new ArrayList<>();
-    DefaultProcessor proc = new DefaultProcessor();
+    JSATOptionProcessor proc = JSATOptionProcessor.getSingleton();
 
     try {
       result.add("-" + REGRESSOR);
@@ -129,6 +173,15 @@ public class JSATRegressor
       e.printStackTrace();
     }
 
+    if (getUseViews())
+      result.add("-" + USE_VIEWS);
+
+    result.add("-" + NUM_SLOTS);
+    result.add("" + getNumExecutionSlots());
+
+    if (getUseConversionCache())
+      result.add("-" + CONVERSION_CACHE);
+
     Collections.addAll(result, super.getOptions());
 
     return result.toArray(new String[result.size()]);
@@ -171,6 +224,103 @@ public class JSATRegressor
     return "The JSAT regressor to use.";
   }
 
+  /**
+   * Sets whether to wrap the Weka data rather than copying it when training.
+   * NB: with views, the JSAT data shares its values with the training
+   * instances, i.e., a JSAT algorithm modifying its data modifies them as well.
+   *
+   * @param value	true if to use views
+   * @see		WekaToJSAT#setUseViews(boolean)
+   */
+  public void setUseViews(boolean value) {
+    m_UseViews = value;
+  }
+
+  /**
+   * Returns whether to wrap the Weka data rather than copying it when training.
+   *
+   * @return		true if to use views
+   * @see		WekaToJSAT#setUseViews(boolean)
+   */
+  public boolean getUseViews() {
+    return m_UseViews;
+  }
+
+  /**
+   * Returns the tip text for this property
+   *
+   * @return tip text for this property suitable for displaying in the
+   *         explorer/experimenter gui
+   */
+  public String useViewsTipText() {
+    return "If enabled, the JSAT data wraps the Weka data rather than copying it, "
+      + "reducing the memory footprint during training; the JSAT algorithm must not "
+      + "modify its training data, as any change is made to the values of the Weka "
+      + "instances passed in for training (and all copies sharing them).";
+  }
+
+  /**
+   * Sets the number of execution slots (threads) to use.
+   *
+   * @param value	the number of slots, 0 to use all cores
+   */
+  public void setNumExecutionSlots(int value) {
+    m_NumExecutionSlots = value;
+  }
+
+  /**
+   * Returns the number of execution slots (threads) to use.
+   *
+   * @return		the number of slots, 0 to use all cores
+   */
+  public int getNumExecutionSlots() {
+    return m_NumExecutionSlots;
+  }
+
+  /**
+   * Returns the tip text for this property
+   *
+   * @return tip text for this property suitable for displaying in the
+   *         explorer/experimenter gui
+   */
+  public String numExecutionSlotsTipText() {
+    return "The number of execution slots (threads) to use for conversion, training and batch predictions; "
+      + "0 uses all available cores.";
+  }
+
+  /**
+   * Sets whether to cache converted rows across builds, so that overlapping
+   * subsets of the same data (e.g., cross-validation folds) only get
+   * converted once.
+   *
+   * @param value	true if to use the cache
+   * @see		JSATConversionCache
+   */
+  public void setUseConversionCache(boolean value) {
+    m_UseConversionCache = value;
+  }
+
+  /**
+   * Returns whether to cache converted rows across builds.
+   *
+   * @return		true if to use the cache
+   * @see		JSATConversionCache
+   */
+  public boolean getUseConversionCache() {
+    return m_UseConversionCache;
+  }
+
+  /**
+   * Returns the tip text for this property
+   *
+   * @return tip text for this property suitable for displaying in the
+   *         explorer/experimenter gui
+   */
+  public String useConversionCacheTipText() {
+    return "If enabled, converted rows are cached across builds on (subsets of) the same data, "
+      + "e.g., the training sets of a cross-validation; not used in conjunction with views.";
+  }
+
   /**
    * Returns the Capabilities of this classifier.
    *
@@ -192,6 +342,9 @@ public class JSATRegressor
 
   /**
    * Performs predictions.
+   * Thread-safe after building: the conversion plan doesn't change and rows
+   * get converted into thread-local buffers, without any locking. Requires
+   * the JSAT model not to modify its state during prediction.
    *
    * @param instance	the instance to classify
    * @return		the classification
@@ -201,12 +354,83 @@ public class JSATRegressor
   public double classifyInstance(Instance instance) throws Exception {
     DataPoint	data;
 
-    // convert into JSAT row
-    data = m_WekaToJSAT.convertRow(instance);
+    // convert into JSAT row (thread-local buffer)
+    data = m_WekaToJSAT.convertRowBuffered(instance);
 
     return m_Regressor.regress(data);
   }
 
+  /**
+   * Returns whether the batch prediction is more efficient than
+   * predicting instance by instance.
+   *
+   * @return		true, since batches get predicted in parallel
+   */
+  @Override
+  public boolean implementsMoreEfficientBatchPrediction() {
+    return true;
+  }
+
+  /**
+   * Performs predictions for a batch of instances. The batch gets split into
+   * chunks of the configured batch size, which get processed in parallel
+   * using the configured number of execution slots.
+   *
+   * @param instances	the instances to make predictions for
+   * @return		the predictions, one row per instance
+   * @throws Exception	if prediction fails
+   * @see		#getBatchSize()
+   * @see		#getNumExecutionSlots()
+   */
+  @Override
+  public double[][] distributionsForInstances(final Instances instances) throws Exception {
+    final double[][]		result;
+    int				batchSize;
+    int				i;
+    ExecutorService		executor;
+    List<Future<Void>>		jobs;
+
+    result    = new double[instances.numInstances()][];
+    batchSize = Integer.parseInt(getBatchSize());
+    if (batchSize < 1)
+      batchSize = instances.numInstances();
+
+    // single chunk or thread
+    if ((instances.numInstances() <= batchSize) || (JSATUtils.getNumThreads(m_NumExecutionSlots) == 1)) {
+      for (i = 0; i < instances.numInstances(); i++)
+	result[i] = new double[]{classifyInstance(instances.instance(i))};
+      return result;
+    }
+
+    // parallel chunks
+    executor = JSATUtils.newExecutor(m_NumExecutionSlots);
+    try {
+      jobs = new ArrayList<>();
+      for (i = 0; i < instances.numInstances(); i += batchSize) {
+	final int from = i;
+	final int to   = Math.min(i + batchSize, instances.numInstances());
+	jobs.add(executor.submit(new Callable<Void>() {
+	  @Override
+	  public Void call() throws Exception {
+	    for (int n = from; n < to; n++)
+	      result[n] = new double[]{classifyInstance(instances.instance(n))};
+	    return null;
+	  }
+	}));
+      }
+      for (Future<Void> job: jobs)
+	job.get();
+    }
+    catch (ExecutionException e) {
+      throw JSATUtils.unwrap(e);
+    }
+    finally {
+      executor.shutdownNow();
+    }
+
+    return result;
+  }
+
   /**
    * Builds the regressor on the dataset.
    *
@@ -215,16 +439,31 @@ public class JSATRegressor
    */
   @Override
   public void buildClassifier(Instances instances) throws Exception {
-    getCapabilities().testWithFail(instances);
+    ExecutorService	executor;
 
-    instances = new Instances(instances);
-    instances.deleteWithMissingClass();
+    getCapabilities().testWithFail(instances);
 
-    // convert into JSAT dataset
+    // convert into JSAT dataset (skipping rows with missing class)
+    m_WekaToJSAT.setUseViews(m_UseViews);
+    m_WekaToJSAT.setSkipMissingClass(true);
+    m_WekaToJSAT.setCache(m_UseConversionCache ? JSATConversionCache.getSingleton() : null);
+    m_WekaToJSAT.setParallel(JSATUtils.getNumThreads(m_NumExecutionSlots) > 1);
+    m_WekaToJSAT.setNumThreads(JSATUtils.getNumThreads(m_NumExecutionSlots));
     m_WekaToJSAT.initialize(instances);
     RegressionDataSet dataset = (RegressionDataSet) m_WekaToJSAT.convertDataset(instances);
 
     // build
-    m_Regressor.train(dataset);
+    if (JSATUtils.getNumThreads(m_NumExecutionSlots) > 1) {
+      executor = JSATUtils.newExecutor(m_NumExecutionSlots);
+      try {
+	m_Regressor.train(dataset, executor);
+      }
+      finally {
+	executor.shutdownNow();
+      }
+    }
+    else {
+      m_Regressor.train(dataset);
+    }
   }
 }
@@ -0,0 +1,1068 @@
+/*
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/**
+ * JSATSearch.java
+ * Copyright (C) 2017 University of Waikato, Hamilton, NZ
+ */
+
+package weka.classifiers.meta;
+
+import jsat.DataSet;
+import jsat.classifiers.ClassificationDataSet;
+import jsat.classifiers.Classifier;
+import jsat.classifiers.DataPoint;
+import jsat.classifiers.trees.RandomForest;
+import jsat.regression.MultipleLinearRegression;
+import jsat.regression.RegressionDataSet;
+import jsat.regression.Regressor;
+import weka.classifiers.AbstractClassifier;
+import weka.core.Capabilities;
+import weka.core.Capabilities.Capability;
+import weka.core.Instance;
+import weka.core.Instances;
+import weka.core.JSATOptionProcessor;
+import weka.core.JSATUtils;
+import weka.core.Option;
+import weka.core.Randomizable;
+import weka.core.Utils;
+import weka.core.WekaToJSAT;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Enumeration;
+import java.util.List;
+import java.util.Random;
+import java.util.Vector;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+/**
+ <!-- globalinfo-start -->
+ <!-- globalinfo-end -->
+ *
+ <!-- technical-bibtex-start -->
+ <!-- technical-bibtex-end -->
+ *
+ <!-- options-start -->
+ <!-- options-end -->
+ *
+ * @author FracPete (fracpete at waikato dot ac dot nz)
+ * @version $Revision$
+ */
+public class JSATSearch
+  extends AbstractClassifier
+  implements Randomizable {
+
+  public final static String CLASSIFIER = "classifier";
+
+  public final static String REGRESSOR = "regressor";
+
+  public final static String PARAMETER = "parameter";
+
+  public final static String NUM_CANDIDATES = "num-candidates";
+
+  public final static String FOLDS = "folds";
+
+  public final static String EARLY_TERMINATION = "early-termination";
+
+  public final static String SEED = "S";
+
+  public final static String NUM_SLOTS = "num-slots";
+
+  /**
+   * Container for the evaluation of a candidate.
+   */
+  protected static class Result
+    implements Serializable {
+
+    private static final long serialVersionUID = -2405484960282413618L;
+
+    /** the command-line of the candidate. */
+    public String cmdline;
+
+    /** the mean error over the evaluated folds. */
+    public double error = Double.NaN;
+
+    /** the number of folds evaluated. */
+    public int folds;
+
+    /** whether the evaluation was terminated early. */
+    public boolean terminated;
+
+    /** the error message, if the candidate failed. */
+    public String failure;
+
+    /**
+     * Initializes the container.
+     *
+     * @param cmdline	the command-line of the candidate
+     */
+    public Result(String cmdline) {
+      this.cmdline = cmdline;
+    }
+
+    /**
+     * Returns whether the candidate was neither terminated nor failed, i.e.,
+     * whether it got (or still gets) evaluated on all folds.
+     *
+     * @return		true if completed
+     */
+    public boolean isComplete() {
+      return !terminated && (failure == null);
+    }
+  }
+
+  /** the jsat classifier command-line template for nominal classes. */
+  protected String m_Classifier = getDefaultClassifier();
+
+  /** the jsat regressor command-line template for numeric classes. */
+  protected String m_Regressor = getDefaultRegressor();
+
+  /** the parameters to search (name=values). */
+  protected String[] m_Parameters = new String[0];
+
+  /** the number of candidates to sample, 0 for full grid. */
+  protected int m_NumCandidates = 0;
+
+  /** the number of folds. */
+  protected int m_Folds = 5;
+
+  /** the factor of the best error beyond which candidates get terminated. */
+  protected double m_EarlyTermination = 2.0;
+
+  /** the seed for sampling candidates and generating folds. */
+  protected int m_Seed = 1;
+
+  /** the number of execution slots (threads) to use. */
+  protected int m_NumExecutionSlots = 1;
+
+  /** whether the class is nominal. */
+  protected boolean m_NominalClass;
+
+  /** the evaluated candidates. */
+  protected List<Result> m_Results;
+
+  /** the best candidate. */
+  protected Result m_Best;
+
+  /** the model of the best candidate, trained on the full data. */
+  protected Object m_Model;
+
+  /** for converting Weka data. */
+  protected WekaToJSAT m_WekaToJSAT = new WekaToJSAT();
+
+  /**
+   * Returns a string describing classifier
+   *
+   * @return a description suitable for displaying in the explorer/experimenter
+   *         gui
+   */
+  public String globalInfo() {
+    return "Grid or random search for the best configuration of a JSAT classifier (nominal class) "
+      + "or regressor (numeric class), using cross-validation.\n"
+      + "The candidates are generated from a command-line template, replacing placeholders of "
+      + "the form @name@ with the values of the parameters, e.g., '@k@' in the template and "
+      + "parameter 'k=1:9:2'. Parameter values are either comma-separated lists or "
+      + "'min:max:step' ranges.\n"
+      + "The data gets converted only once; the training sets of the folds consist of shallow "
+      + "copies of the converted rows (sharing the values, but not the weights), with each "
+      + "candidate getting its own copies. For nominal classes, the folds are stratified.\n"
+      + "The candidates get evaluated fold by fold, in parallel within each fold. After each fold, "
+      + "candidates whose mean error exceeds the lowest mean error of the remaining candidates by "
+      + "the early termination factor are not evaluated any further. The best candidate is trained "
+      + "on the full data.";
+  }
+
+  /**
+   * Returns an enumeration describing the available options.
+   *
+   * @return an enumeration of all the available options.
+   */
+  @Override
+  public Enumeration listOptions() {
+    Vector result = new Vector();
+
+    result.addElement(new Option(
+      "\tThe JSAT classifier template to use for nominal classes.\n"
+	+ "\t(default: " + getDefaultClassifier() + ")",
+      CLASSIFIER, 1, "-" + CLASSIFIER + " <classname + options>"));
+
+    result.addElement(new Option(
+      "\tThe JSAT regressor template to use for numeric classes.\n"
+	+ "\t(default: " + getDefaultRegressor() + ")",
+      REGRESSOR, 1, "-" + REGRESSOR + " <classname + options>"));
+
+    result.addElement(new Option(
+      "\tThe parameter to search, replaces @name@ in the template, can be supplied multiple times.\n"
+	+ "\tValues are either a comma-separated list or a min:max:step range.\n"
+	+ "\t(default: none)",
+      PARAMETER, 1, "-" + PARAMETER + " <name=values>"));
+
+    result.addElement(new Option(
+      "\tThe number of candidates to sample randomly from the grid, 0 for the full grid.\n"
+	+ "\t(default: 0)",
+      NUM_CANDIDATES, 1, "-" + NUM_CANDIDATES + " <num>"));
+
+    result.addElement(new Option(
+      "\tThe number of cross-validation folds.\n"
+	+ "\t(default: 5)",
+      FOLDS, 1, "-" + FOLDS + " <num>"));
+
+    result.addElement(new Option(
+      "\tThe factor of the lowest mean error after a fold beyond which candidates get terminated, 0 to disable.\n"
+	+ "\t(default: 2.0)",
+      EARLY_TERMINATION, 1, "-" + EARLY_TERMINATION + " <factor>"));
+
+    result.addElement(new Option(
+      "\tThe seed for sampling candidates and generating folds.\n"
+	+ "\t(default: 1)",
+      SEED, 1, "-" + SEED + " <num>"));
+
+    result.addElement(new Option(
+      "\tNumber of execution slots for evaluating candidates.\n"
+	+ "\t(default 1 - i.e. no parallelism)\n"
+	+ "\t(use 0 to auto-detect number of cores)",
+      NUM_SLOTS, 1, "-" + NUM_SLOTS + " <num>"));
+
+    result.addAll(Collections.list(super.listOptions()));
+
+    return result.elements();
+  }
+
+  /**
+   * Sets the options.
+   *
+   * @param options	the options
+   * @throws Exception	if setting fails
+   */
+  @Override
+  public void setOptions(String[] options) throws Exception {
+    List<String> parameters = new ArrayList<>();
+    String tmpStr = Utils.getOption(CLASSIFIER, options);
+    if (tmpStr.isEmpty())
+      setClassifier(getDefaultClassifier());
+    else
+      setClassifier(tmpStr);
+    tmpStr = Utils.getOption(REGRESSOR, options);
+    if (tmpStr.isEmpty())
+      setRegressor(getDefaultRegressor());
+    else
+      setRegressor(tmpStr);
+    do {
+      tmpStr = Utils.getOption(PARAMETER, options);
+      if (!tmpStr.isEmpty())
+	parameters.add(tmpStr);
+    }
+    while (!tmpStr.isEmpty());
+    setParameters(parameters.toArray(new String[parameters.size()]));
+    tmpStr = Utils.getOption(NUM_CANDIDATES, options);
+    if (tmpStr.isEmpty())
+      setNumCandidates(0);
+    else
+      setNumCandidates(Integer.parseInt(tmpStr));
+    tmpStr = Utils.getOption(FOLDS, options);
+    if (tmpStr.isEmpty())
+      setFolds(5);
+    else
+      setFolds(Integer.parseInt(tmpStr));
+    tmpStr = Utils.getOption(EARLY_TERMINATION, options);
+    if (tmpStr.isEmpty())
+      setEarlyTermination(2.0);
+    else
+      setEarlyTermination(Double.parseDouble(tmpStr));
+    tmpStr = Utils.getOption(SEED, options);
+    if (tmpStr.isEmpty())
+      setSeed(1);
+    else
+      setSeed(Integer.parseInt(tmpStr));
+    tmpStr = Utils.getOption(NUM_SLOTS, options);
+    if (tmpStr.isEmpty())
+      setNumExecutionSlots(1);
+    else
+      setNumExecutionSlots(Integer.parseInt(tmpStr));
+    super.setOptions(options);
+  }
+
+  /**
+   * Returns the options.
+   *
+   * @return		the options
+   */
+  @Override
+  public String[] getOptions() {
+    List<String> result = new ArrayList<>();
+
+    result.add("-" + CLASSIFIER);
+    result.add(getClassifier());
+    result.add("-" + REGRESSOR);
+    result.add(getRegressor());
+    for (String parameter: getParameters()) {
+      result.add("-" + PARAMETER);
+      result.add(parameter);
+    }
+    result.add("-" + NUM_CANDIDATES);
+    result.add("" + getNumCandidates());
+    result.add("-" + FOLDS);
+    result.add("" + getFolds());
+    result.add("-" + EARLY_TERMINATION);
+    result.add("" + getEarlyTermination());
+    result.add("-" + SEED);
+    result.add("" + getSeed());
+    result.add("-" + NUM_SLOTS);
+    result.add("" + getNumExecutionSlots());
+
+    Collections.addAll(result, super.getOptions());
+
+    return result.toArray(new String[result.size()]);
+  }
+
+  /**
+   * Returns the default classifier template.
+   *
+   * @return		the default
+   */
+  protected String getDefaultClassifier() {
+    try {
+      return JSATOptionProcessor.getSingleton().toCommandline(new RandomForest());
+    }
+    catch (Exception e) {
+      return RandomForest.class.getName();
+    }
+  }
+
+  /**
+   * Sets the classifier template.
+   *
+   * @param value	the template
+   */
+  public void setClassifier(String value) {
+    m_Classifier = value;
+  }
+
+  /**
+   * Returns the classifier template.
+   *
+   * @return		the template
+   */
+  public String getClassifier() {
+    return m_Classifier;
+  }
+
+  /**
+   * Returns the tip text for this property
+   *
+   * @return tip text for this property suitable for displaying in the
+   *         explorer/experimenter gui
+   */
+  public String classifierTipText() {
+    return "The command-line template of the JSAT classifier to use for nominal classes, "
+      + "with @name@ placeholders for the parameters.";
+  }
+
+  /**
+   * Returns the default regressor template.
+   *
+   * @return		the default
+   */
+  protected String getDefaultRegressor() {
+    try {
+      return JSATOptionProcessor.getSingleton().toCommandline(new MultipleLinearRegression());
+    }
+    catch (Exception e) {
+      return MultipleLinearRegression.class.getName();
+    }
+  }
+
+  /**
+   * Sets the regressor template.
+   *
+   * @param value	the template
+   */
+  public void setRegressor(String value) {
+    m_Regressor = value;
+  }
+
+  /**
+   * Returns the regressor template.
+   *
+   * @return		the template
+   */
+  public String getRegressor() {
+    return m_Regressor;
+  }
+
+  /**
+   * Returns the tip text for this property
+   *
+   * @return tip text for this property suitable for displaying in the
+   *         explorer/experimenter gui
+   */
+  public String regressorTipText() {
+    return "The command-line template of the JSAT regressor to use for numeric classes, "
+      + "with @name@ placeholders for the parameters.";
+  }
+
+  /**
+   * Sets the parameters to search.
+   *
+   * @param value	the parameters (name=values)
+   */
+  public void setParameters(String[] value) {
+    m_Parameters = value;
+  }
+
+  /**
+   * Returns the parameters to search.
+   *
+   * @return		the parameters (name=values)
+   */
+  public String[] getParameters() {
+    return m_Parameters;
+  }
+
+  /**
+   * Returns the tip text for this property
+   *
+   * @return tip text for this property suitable for displaying in the
+   *         explorer/experimenter gui
+   */
+  public String parametersTipText() {
+    return "The parameters to search, format 'name=values', with values either a comma-separated "
+      + "list or a 'min:max:step' range; the values replace @name@ in the template.";
+  }
+
+  /**
+   * Sets the number of candidates to sample randomly from the grid.
+   *
+   * @param value	the number of candidates, 0 for the full grid
+   */
+  public void setNumCandidates(int value) {
+    m_NumCandidates = value;
+  }
+
+  /**
+   * Returns the number of candidates to sample randomly from the grid.
+   *
+   * @return		the number of candidates, 0 for the full grid
+   */
+  public int getNumCandidates() {
+    return m_NumCandidates;
+  }
+
+  /**
+   * Returns the tip text for this property
+   *
+   * @return tip text for this property suitable for displaying in the
+   *         explorer/experimenter gui
+   */
+  public String numCandidatesTipText() {
+    return "The number of candidates to sample randomly from the grid (random search); "
+      + "0 evaluates the full grid (grid search).";
+  }
+
+  /**
+   * Sets the number of cross-validation folds.
+   *
+   * @param value	the number of folds
+   */
+  public void setFolds(int value) {
+    m_Folds = value;
+  }
+
+  /**
+   * Returns the number of cross-validation folds.
+   *
+   * @return		the number of folds
+   */
+  public int getFolds() {
+    return m_Folds;
+  }
+
+  /**
+   * Returns the tip text for this property
+   *
+   * @return tip text for this property suitable for displaying in the
+   *         explorer/experimenter gui
+   */
+  public String foldsTipText() {
+    return "The number of cross-validation folds for evaluating the candidates.";
+  }
+
+  /**
+   * Sets the factor of the best error beyond which candidates get terminated.
+   *
+   * @param value	the factor, 0 to disable
+   */
+  public void setEarlyTermination(double value) {
+    m_EarlyTermination = value;
+  }
+
+  /**
+   * Returns the factor of the best error beyond which candidates get terminated.
+   *
+   * @return		the factor, 0 to disable
+   */
+  public double getEarlyTermination() {
+    return m_EarlyTermination;
+  }
+
+  /**
+   * Returns the tip text for this property
+   *
+   * @return tip text for this property suitable for displaying in the
+   *         explorer/experimenter gui
+   */
+  public String earlyTerminationTipText() {
+    return "Candidates whose mean error after a fold exceeds the lowest mean error of the remaining "
+      + "candidates times this factor are not evaluated any further; 0 disables early termination.";
+  }
+
+  /**
+   * Sets the seed for sampling candidates and generating folds.
+   *
+   * @param value	the seed
+   */
+  @Override
+  public void setSeed(int value) {
+    m_Seed = value;
+  }
+
+  /**
+   * Returns the seed for sampling candidates and generating folds.
+   *
+   * @return		the seed
+   */
+  @Override
+  public int getSeed() {
+    return m_Seed;
+  }
+
+  /**
+   * Returns the tip text for this property
+   *
+   * @return tip text for this property suitable for displaying in the
+   *         explorer/experimenter gui
+   */
+  public String seedTipText() {
+    return "The seed for sampling candidates and generating folds.";
+  }
+
+  /**
+   * Sets the number of execution slots (threads) to use.
+   *
+   * @param value	the number of slots, 0 to use all cores
+   */
+  public void setNumExecutionSlots(int value) {
+    m_NumExecutionSlots = value;
+  }
+
+  /**
+   * Returns the number of execution slots (threads) to use.
+   *
+   * @return		the number of slots, 0 to use all cores
+   */
+  public int getNumExecutionSlots() {
+    return m_NumExecutionSlots;
+  }
+
+  /**
+   * Returns the tip text for this property
+   *
+   * @return tip text for this property suitable for displaying in the
+   *         explorer/experimenter gui
+   */
+  public String numExecutionSlotsTipText() {
+    return "The number of execution slots (threads) to use for conversion and for evaluating candidates in parallel; "
+      + "0 uses all available cores.";
+  }
+
+  /**
+   * Returns the Capabilities of this classifier.
+   *
+   * @return the capabilities of this object
+   * @see Capabilities
+   */
+  @Override
+  public Capabilities getCapabilities() {
+    Capabilities	result;
+
+    result = super.getCapabilities();
+    result.disableAllClasses();
+    result.disableAllClassDependencies();
+    result.enable(Capability.NOMINAL_CLASS);
+    result.enable(Capability.NUMERIC_CLASS);
+    result.enable(Capability.MISSING_CLASS_VALUES);
+
+    return result;
+  }
+
+  /**
+   * Expands the values of a parameter, either a comma-separated list or a
+   * min:max:step range.
+   *
+   * @param values	the values to expand
+   * @return		the expanded values
+   */
+  protected static List<String> expandValues(String values) {
+    List<String>	result;
+    String[]		range;
+    double		min;
+    double		max;
+    double		step;
+    double		value;
+    boolean		integer;
+    int			i;
+
+    result = new ArrayList<>();
+    if (values.contains(",") || !values.contains(":")) {
+      for (String v: values.split(","))
+	result.add(v.trim());
+      return result;
+    }
+
+    range = values.split(":");
+    if (range.length != 3)
+      throw new IllegalArgumentException("Range must have format 'min:max:step': " + values);
+    min  = Double.parseDouble(range[0].trim());
+    max  = Double.parseDouble(range[1].trim());
+    step = Double.parseDouble(range[2].trim());
+    if (step <= 0)
+      throw new IllegalArgumentException("Step must be positive: " + values);
+    integer = (min == Math.rint(min)) && (step == Math.rint(step));
+    for (i = 0; (value = min + i * step) <= max + step * 1e-9; i++) {
+      if (integer)
+	result.add("" + (long) value);
+      else
+	result.add("" + value);
+    }
+
+    return result;
+  }
+
+  /**
+   * Generates the command-lines of all the grid points.
+   *
+   * @param template	the command-line template
+   * @param parameters	the parameters (name=values)
+   * @return		the command-lines
+   */
+  protected static List<String> expandGrid(String template, String[] parameters) {
+    List<String>	result;
+    List<String>	expanded;
+    List<String>	values;
+    String		name;
+    int			pos;
+
+    result = new ArrayList<>();
+    result.add(template);
+    for (String parameter: parameters) {
+      pos = parameter.indexOf('=');
+      if (pos < 1)
+	throw new IllegalArgumentException("Parameter must have format 'name=values': " + parameter);
+      name     = "@" + parameter.substring(0, pos).trim() + "@";
+      values   = expandValues(parameter.substring(pos + 1));
+      expanded = new ArrayList<>();
+      for (String cmdline: result) {
+	for (String value: values)
+	  expanded.add(cmdline.replace(name, value));
+      }
+      result = expanded;
+    }
+
+    return result;
+  }
+
+  /**
+   * Generates the candidates, either the full grid or a random sample.
+   *
+   * @param template	the command-line template
+   * @return		the command-lines of the candidates
+   */
+  protected List<String> generateCandidates(String template) {
+    List<String>	result;
+
+    result = expandGrid(template, m_Parameters);
+    if ((m_NumCandidates > 0) && (m_NumCandidates < result.size())) {
+      Collections.shuffle(result, new Random(m_Seed));
+      result = new ArrayList<>(result.subList(0, m_NumCandidates));
+    }
+
+    return result;
+  }
+
+  /**
+   * Generates the indices of the training and test rows of the folds. For
+   * a nominal class, the folds get stratified.
+   *
+   * @param dataset	the converted data
+   * @param trains	the list to add the training indices to
+   * @param tests	the list to add the test indices to
+   */
+  protected void generateFolds(final DataSet dataset, List<int[]> trains, List<int[]> tests) {
+    List<Integer>	indices;
+    int[]		train;
+    int[]		test;
+    int			numFolds;
+    int			fold;
+    int			i;
+    int			m;
+    int			n;
+
+    indices = new ArrayList<>();
+    for (i = 0; i < dataset.getSampleSize(); i++)
+      indices.add(i);
+    Collections.shuffle(indices, new Random(m_Seed));
+    numFolds = Math.min(m_Folds, dataset.getSampleSize());
+
+    // stratify: group by class (stable sort keeps the random order within
+    // a class), every numFolds-th row goes into the same fold
+    if (dataset instanceof ClassificationDataSet) {
+      Collections.sort(indices, new Comparator<Integer>() {
+	@Override
+	public int compare(Integer o1, Integer o2) {
+	  return Integer.compare(
+	    ((ClassificationDataSet) dataset).getDataPointCategory(o1),
+	    ((ClassificationDataSet) dataset).getDataPointCategory(o2));
+	}
+      });
+    }
+
+    for (fold = 0; fold < numFolds; fold++) {
+      test  = new int[(indices.size() - fold + numFolds - 1) / numFolds];
+      train = new int[indices.size() - test.length];
+      m     = 0;
+      n     = 0;
+      for (i = 0; i < indices.size(); i++) {
+	if (i % numFolds == fold)
+	  test[n++] = indices.get(i);
+	else
+	  train[m++] = indices.get(i);
+      }
+      trains.add(train);
+      tests.add(test);
+    }
+  }
+
+  /**
+   * Generates the training set from the specified rows. The rows are
+   * shallow copies, sharing the values with the converted rows but having
+   * their own weight, as learners may re-weight their training data and
+   * the candidates get evaluated concurrently.
+   *
+   * @param dataset	the converted data
+   * @param indices	the indices of the rows to use
+   * @return		the training set
+   */
+  protected DataSet newTrainingSet(DataSet dataset, int[] indices) {
+    ClassificationDataSet	cds;
+    ClassificationDataSet	ctrain;
+    RegressionDataSet		rds;
+    RegressionDataSet		rtrain;
+    DataPoint			point;
+
+    if (dataset instanceof ClassificationDataSet) {
+      cds    = (ClassificationDataSet) dataset;
+      ctrain = new ClassificationDataSet(cds.getNumNumericalVars(), cds.getCategories(), cds.getPredicting());
+      for (int index: indices) {
+	point = cds.getDataPoint(index);
+	ctrain.addDataPoint(
+	  new DataPoint(point.getNumericalValues(), point.getCategoricalValues(), point.getCategoricalData(), point.getWeight()),
+	  cds.getDataPointCategory(index));
+      }
+      return ctrain;
+    }
+    else {
+      rds    = (RegressionDataSet) dataset;
+      rtrain = new RegressionDataSet(rds.getNumNumericalVars(), rds.getCategories());
+      for (int index: indices) {
+	point = rds.getDataPoint(index);
+	rtrain.addDataPoint(
+	  new DataPoint(point.getNumericalValues(), point.getCategoricalValues(), point.getCategoricalData(), point.getWeight()),
+	  rds.getTargetValue(index));
+      }
+      return rtrain;
+    }
+  }
+
+  /**
+   * Trains the model on the training set and computes the error on the
+   * test rows: weighted error rate for classifiers, weighted RMSE for
+   * regressors.
+   *
+   * @param model	the model to train
+   * @param train	the training set
+   * @param dataset	the full data
+   * @param test	the indices of the test rows
+   * @return		the error
+   */
+  protected double evaluateFold(Object model, DataSet train, DataSet dataset, int[] test) {
+    ClassificationDataSet	cds;
+    RegressionDataSet		rds;
+    DataPoint			point;
+    double			sum;
+    double			sumWeights;
+    double			diff;
+
+    sum        = 0;
+    sumWeights = 0;
+    if (model instanceof Classifier) {
+      ((Classifier) model).trainC((ClassificationDataSet) train);
+      cds = (ClassificationDataSet) dataset;
+      for (int index: test) {
+	point = cds.getDataPoint(index);
+	if (((Classifier) model).classify(point).mostLikely() != cds.getDataPointCategory(index))
+	  sum += point.getWeight();
+	sumWeights += point.getWeight();
+      }
+      return (sumWeights == 0) ? 0 : sum / sumWeights;
+    }
+    else {
+      ((Regressor) model).train((RegressionDataSet) train);
+      rds = (RegressionDataSet) dataset;
+      for (int index: test) {
+	point       = rds.getDataPoint(index);
+	diff        = ((Regressor) model).regress(point) - rds.getTargetValue(index);
+	sum        += point.getWeight() * diff * diff;
+	sumWeights += point.getWeight();
+      }
+      return (sumWeights == 0) ? 0 : Math.sqrt(sum / sumWeights);
+    }
+  }
+
+  /**
+   * Evaluates the candidate on the specified fold and updates its mean error.
+   * A failure gets recorded in the candidate.
+   *
+   * @param result	the candidate to evaluate
+   * @param fold	the fold to evaluate
+   * @param dataset	the full data
+   * @param trains	the indices of the training rows of the folds
+   * @param tests	the indices of the test rows of the folds
+   */
+  protected void evaluateCandidate(Result result, int fold, DataSet dataset, List<int[]> trains, List<int[]> tests) {
+    Object	model;
+    double	error;
+
+    try {
+      model = JSATOptionProcessor.getSingleton().fromCommandline(result.cmdline);
+      error = evaluateFold(model, newTrainingSet(dataset, trains.get(fold)), dataset, tests.get(fold));
+      if (result.folds == 0)
+	result.error = error;
+      else
+	result.error = (result.error * result.folds + error) / (result.folds + 1);
+      result.folds++;
+    }
+    catch (Exception e) {
+      result.failure = e.toString();
+    }
+  }
+
+  /**
+   * Evaluates all the remaining candidates on the specified fold.
+   *
+   * @param executor	the executor to use, null for sequential evaluation
+   * @param fold	the fold to evaluate
+   * @param dataset	the full data
+   * @param trains	the indices of the training rows of the folds
+   * @param tests	the indices of the test rows of the folds
+   * @throws Exception	if evaluation gets interrupted
+   */
+  protected void evaluateRound(ExecutorService executor, final int fold, final DataSet dataset,
+			       final List<int[]> trains, final List<int[]> tests) throws Exception {
+    List<Future<Void>>	jobs;
+
+    if (executor == null) {
+      for (Result result: m_Results) {
+	if (result.isComplete())
+	  evaluateCandidate(result, fold, dataset, trains, tests);
+      }
+      return;
+    }
+
+    jobs = new ArrayList<>();
+    for (final Result result: m_Results) {
+      if (!result.isComplete())
+	continue;
+      jobs.add(executor.submit(new Callable<Void>() {
+	@Override
+	public Void call() throws Exception {
+	  evaluateCandidate(result, fold, dataset, trains, tests);
+	  return null;
+	}
+      }));
+    }
+    for (Future<Void> job: jobs) {
+      try {
+	job.get();
+      }
+      catch (ExecutionException e) {
+	throw JSATUtils.unwrap(e);
+      }
+    }
+  }
+
+  /**
+   * Terminates the remaining candidates whose mean error exceeds the lowest
+   * mean error of the remaining candidates by the early termination factor.
+   * As all remaining candidates got evaluated on the same folds, the outcome
+   * does not depend on the order of evaluation. Nothing gets terminated
+   * while the lowest mean error is zero, as a perfect score on the first
+   * folds offers no scale to compare the other candidates against.
+   */
+  protected void terminateCandidates() {
+    double	best;
+
+    best = Double.POSITIVE_INFINITY;
+    for (Result result: m_Results) {
+      if (result.isComplete() && (result.error < best))
+	best = result.error;
+    }
+    if (!(best > 0))
+      return;
+    for (Result result: m_Results) {
+      if (result.isComplete() && (result.error > best * m_EarlyTermination))
+	result.terminated = true;
+    }
+  }
+
+  /**
+   * Performs predictions.
+   *
+   * @param instance	the instance to classify
+   * @return		the class distribution
+   * @throws Exception	if prediction fails
+   */
+  @Override
+  public double[] distributionForInstance(Instance instance) throws Exception {
+    DataPoint		data;
+
+    // convert into JSAT row (thread-local buffer)
+    data = m_WekaToJSAT.convertRowBuffered(instance);
+
+    if (!m_NominalClass)
+      return new double[]{((Regressor) m_Model).regress(data)};
+
+    return JSATUtils.toDistribution(((Classifier) m_Model).classify(data));
+  }
+
+  /**
+   * Converts the data, evaluates the candidates and trains the best one on
+   * the full data.
+   *
+   * @param instances	the dataset to use
+   * @throws Exception	if the build fails or no candidate could be evaluated
+   */
+  @Override
+  public void buildClassifier(Instances instances) throws Exception {
+    DataSet		dataset;
+    List<int[]>		trains;
+    List<int[]>		tests;
+    List<String>	candidates;
+    ExecutorService	executor;
+    Object		model;
+    int			fold;
+
+    getCapabilities().testWithFail(instances);
+
+    // convert once (skipping rows with missing class)
+    m_NominalClass = instances.classAttribute().isNominal();
+    m_WekaToJSAT.setSkipMissingClass(true);
+    m_WekaToJSAT.setParallel(JSATUtils.getNumThreads(m_NumExecutionSlots) > 1);
+    m_WekaToJSAT.setNumThreads(JSATUtils.getNumThreads(m_NumExecutionSlots));
+    m_WekaToJSAT.initialize(instances);
+    dataset = m_WekaToJSAT.convertDataset(instances);
+    if (dataset.getSampleSize() < 2)
+      throw new IllegalStateException("At least two rows with class value required!");
+
+    // folds, same for all candidates
+    trains = new ArrayList<>();
+    tests  = new ArrayList<>();
+    generateFolds(dataset, trains, tests);
+
+    // evaluate, one fold at a time
+    candidates = generateCandidates(m_NominalClass ? m_Classifier : m_Regressor);
+    m_Results  = new ArrayList<>();
+    for (String cmdline: candidates)
+      m_Results.add(new Result(cmdline));
+    executor = null;
+    if (JSATUtils.getNumThreads(m_NumExecutionSlots) > 1)
+      executor = JSATUtils.newExecutor(m_NumExecutionSlots);
+    try {
+      for (fold = 0; fold < trains.size(); fold++) {
+	evaluateRound(executor, fold, dataset, trains, tests);
+	if ((m_EarlyTermination > 0) && (fold < trains.size() - 1))
+	  terminateCandidates();
+      }
+    }
+    finally {
+      if (executor != null)
+	executor.shutdownNow();
+    }
+
+    // best candidate
+    m_Best = null;
+    for (Result result: m_Results) {
+      if (result.isComplete() && ((m_Best == null) || (result.error < m_Best.error)))
+	m_Best = result;
+    }
+    if (m_Best == null)
+      throw new IllegalStateException("None of the " + m_Results.size() + " candidates could be evaluated, "
+	+ "first failure: " + m_Results.get(0).failure);
+
+    // train on full data
+    model = JSATOptionProcessor.getSingleton().fromCommandline(m_Best.cmdline);
+    if (m_NominalClass)
+      ((Classifier) model).trainC((ClassificationDataSet) dataset);
+    else
+      ((Regressor) model).train((RegressionDataSet) dataset);
+    m_Model = model;
+  }
+
+  /**
+   * Returns a short description of the model.
+   *
+   * @return		the description
+   */
+  @Override
+  public String toString() {
+    StringBuilder	result;
+
+    if (m_Best == null)
+      return "No model built yet!";
+
+    result = new StringBuilder();
+    result.append("Best: ").append(m_Best.cmdline).append("\n");
+    result.append("Error (").append(m_NominalClass ? "error rate" : "RMSE").append("): ");
+    result.append(Utils.doubleToString(m_Best.error, 6)).append("\n\n");
+    result.append("Candidates:\n");
+    for (Result r: m_Results) {
+      result.append(r.cmdline).append("\n  ");
+      if (r.failure != null)
+	result.append("failed: ").append(r.failure);
+      else if (r.terminated)
+	result.append("terminated after ").append(r.folds).append(" fold(s), error: ").append(Utils.doubleToString(r.error, 6));
+      else
+	result.append("error: ").append(Utils.doubleToString(r.error, 6));
+      result.append("\n");
+    }
+
+    return result.toString();
+  }
+}
@@ -0,0 +1,227 @@
+/*
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/**
+ * JSATUpdateableRegressor.java
+ * Copyright (C) 2017 University of Waikato, Hamilton, NZ
+ */
+
+package weka.classifiers.meta;
+
+import jsat.classifiers.linear.PassiveAggressive;
+import jsat.regression.Regressor;
+import jsat.regression.UpdateableRegressor;
+import weka.classifiers.UpdateableClassifier;
+import weka.core.Capabilities;
+import weka.core.Instance;
+import weka.core.Instances;
+import weka.core.Option;
+import weka.core.Utils;
+
+import java.util.ArrayList;
+import java.util.Enumeration;
+import java.util.List;
+import java.util.Vector;
+
+/**
+ <!-- globalinfo-start -->
+ <!-- globalinfo-end -->
+ *
+ <!-- technical-bibtex-start -->
+ <!-- technical-bibtex-end -->
+ *
+ <!-- options-start -->
+ <!-- options-end -->
+ *
+ * @author FracPete (fracpete at waikato dot ac dot nz)
+ * @version $Revision$
+ */
+public class JSATUpdateableRegressor
+  extends JSATRegressor
+  implements UpdateableClassifier {
+
+  /**
+   * Returns a string describing classifier
+   *
+   * @return a description suitable for displaying in the explorer/experimenter
+   *         gui
+   */
+  @Override
+  public String globalInfo() {
+    return "Wrapper around an updateable JSAT regressor, which gets trained incrementally.\n"
+      + "The JSAT regressor must implement " + UpdateableRegressor.class.getName() + ".";
+  }
+
+  /**
+   * Returns an enumeration describing the available options. Omits the
+   * options for views, conversion cache and execution slots, as the rows
+   * get converted and processed one by one.
+   *
+   * @return an enumeration of all the available options.
+   */
+  @Override
+  public Enumeration listOptions() {
+    Vector		result;
+    Enumeration		enm;
+    Option		option;
+
+    result = new Vector();
+    enm    = super.listOptions();
+    while (enm.hasMoreElements()) {
+      option = (Option) enm.nextElement();
+      if (option.name().equals(USE_VIEWS) || option.name().equals(CONVERSION_CACHE) || option.name().equals(NUM_SLOTS))
+	continue;
+      result.addElement(option);
+    }
+
+    return result.elements();
+  }
+
+  /**
+   * Sets the options. Views, conversion cache and parallelism are always
+   * turned off.
+   *
+   * @param options	the options
+   * @throws Exception	if setting fails
+   */
+  @Override
+  public void setOptions(String[] options) throws Exception {
+    super.setOptions(options);
+    setUseViews(false);
+    setUseConversionCache(false);
+    setNumExecutionSlots(1);
+  }
+
+  /**
+   * Returns the options, without the ones for views, conversion cache and
+   * execution slots.
+   *
+   * @return		the options
+   */
+  @Override
+  public String[] getOptions() {
+    List<String>	result;
+    String[]		options;
+    int			i;
+
+    result  = new ArrayList<>();
+    options = super.getOptions();
+    for (i = 0; i < options.length; i++) {
+      if (options[i].equals("-" + USE_VIEWS) || options[i].equals("-" + CONVERSION_CACHE))
+	continue;
+      if (options[i].equals("-" + NUM_SLOTS)) {
+	i++;
+	continue;
+      }
+      result.add(options[i]);
+    }
+
+    return result.toArray(new String[result.size()]);
+  }
+
+  /**
+   * Returns the default regression algorithm.
+   *
+   * @return		the default
+   */
+  @Override
+  protected Regressor getDefaultRegressor() {
+    return new PassiveAggressive();
+  }
+
+  /**
+   * Returns the tip text for this property
+   *
+   * @return tip text for this property suitable for displaying in the
+   *         explorer/experimenter gui
+   */
+  @Override
+  public String regressorTipText() {
+    return "The updateable JSAT regressor to use.";
+  }
+
+  /**
+   * Returns the JSAT regressor as updateable regressor.
+   *
+   * @return		the regressor
+   * @throws IllegalStateException	if the regressor is not updateable
+   */
+  protected UpdateableRegressor getUpdateableRegressor() {
+    if (!(m_Regressor instanceof UpdateableRegressor))
+      throw new IllegalStateException(
+	"JSAT regressor does not implement " + UpdateableRegressor.class.getName()
+	  + ": " + m_Regressor.getClass().getName());
+    return (UpdateableRegressor) m_Regressor;
+  }
+
+  /**
+   * Returns the capabilities of this regressor. Can be built on the
+   * header alone, as the rows get processed one by one.
+   *
+   * @return		the capabilities
+   */
+  @Override
+  public Capabilities getCapabilities() {
+    Capabilities	result;
+
+    result = super.getCapabilities();
+    result.setMinimumNumberInstances(0);
+
+    return result;
+  }
+
+  /**
+   * Builds the regressor on the dataset. Only uses the header for setting up
+   * the JSAT regressor, the rows get processed one by one.
+   *
+   * @param instances	the dataset to use
+   * @throws Exception	if the build fails
+   */
+  @Override
+  public void buildClassifier(Instances instances) throws Exception {
+    int		i;
+
+    getCapabilities().testWithFail(instances);
+
+    // set up from header
+    m_WekaToJSAT.initialize(instances);
+    getUpdateableRegressor().setUp(
+      m_WekaToJSAT.getInputCategoricalData(),
+      m_WekaToJSAT.getNumNumericInputs());
+
+    // update
+    for (i = 0; i < instances.numInstances(); i++)
+      updateClassifier(instances.instance(i));
+  }
+
+  /**
+   * Updates the regressor with the given instance. Instances with missing
+   * target value get skipped.
+   *
+   * @param instance	the new training instance to include in the model
+   * @throws Exception	if the instance could not be incorporated in the model
+   */
+  @Override
+  public void updateClassifier(Instance instance) throws Exception {
+    double	target;
+
+    target = m_WekaToJSAT.getTargetValue(instance);
+    if (Utils.isMissingValue(target))
+      return;
+
+    // the regressor may keep the row, so no buffer
+    getUpdateableRegressor().update(m_WekaToJSAT.convertRow(instance), target);
+  }
+}
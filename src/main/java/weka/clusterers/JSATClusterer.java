@@ -21,28 +21,42 @@
 package weka.clusterers;
 
 import jsat.DataSet;
-import jsat.SimpleDataSet;
 import jsat.classifiers.DataPoint;
 import jsat.clustering.Clusterer;
 import jsat.clustering.kmeans.NaiveKMeans;
-import nz.ac.waikato.cms.jenericcmdline.DefaultProcessor;
+import jsat.linear.DenseVector;
+import jsat.linear.Vec;
+import jsat.linear.VecPaired;
+import jsat.linear.distancemetrics.EuclideanDistance;
+import jsat.linear.vectorcollection.VPTree;
 import weka.core.Capabilities;
 import weka.core.Capabilities.Capability;
 import weka.core.Instance;
 import weka.core.Instances;
+import weka.core.JSATOptionProcessor;
 import weka.core.JSATToWeka;
 import weka.core.Option;
 import weka.core.Utils;
 import weka.core.WekaToJSAT;
 
 import java.util.ArrayList;
-import java.util.Arrays;
 import java.util.Collections;
 import java.util.Enumeration;
 import java.util.List;
 import java.util.Vector;
 
 /**
+ * Wraps a JSAT clusterer. After clustering the training data, the centroids
+ * (mean of the numeric values of the assigned rows) of the clusters are kept
+ * and new instances get assigned to the nearest centroid, using the Euclidean
+ * distance. For a k-means clusterer, these are the final means of the
+ * clusters. With many clusters, a vantage-point tree speeds up the lookup.
+ * <br>
+ * As the centroids only cover numeric attributes, the data must contain at
+ * least one numeric attribute (use NominalToBinary for nominal data). Fails
+ * if the JSAT clusterer doesn't assign any rows to a cluster (e.g., all rows
+ * considered noise).
+ *
  <!-- globalinfo-start -->
  <!-- globalinfo-end -->
  *
@@ -60,15 +74,29 @@ public class JSATClusterer
 
   public final static String REGRESSOR = "clusterer";
 
+  public final static String USE_VIEWS = "use-views";
+
   /** the jsat clusterer to use. */
   protected Clusterer m_Clusterer = getDefaultClusterer();
 
+  /** whether to use views on the Weka data rather than copies. */
+  protected boolean m_UseViews = false;
+
   /** for converting Weka data. */
   protected WekaToJSAT m_WekaToJSAT = new WekaToJSAT();
 
   /** for converting JSAT data. */
   protected JSATToWeka m_JsatToWeka = new JSATToWeka();
 
+  /** the minimum number of clusters for using a spatial index. */
+  public final static int MIN_CLUSTERS_INDEX = 64;
+
+  /** the centroids of the non-empty clusters. */
+  protected Vec[] m_Centroids;
+
+  /** the spatial index over the centroids, paired with their cluster index. */
+  protected transient volatile VPTree<VecPaired<Vec,Integer>> m_Index;
+
   /**
    * Returns a string describing classifier
    *
@@ -93,6 +121,11 @@ public class JSATClusterer
 	+ "\t(default: " + getDefaultClusterer().getClass().getName() + ")",
       REGRESSOR, 1, "-" + REGRESSOR + " <classname + options>"));
 
+    result.addElement(new Option(
+      "\tWraps the Weka data rather than copying it when training.\n"
+	+ "\tThe JSAT algorithm must not modify its training data.",
+      USE_VIEWS, 0, "-" + USE_VIEWS));
+
     result.addAll(Collections.list(super.listOptions()));
 
     return result.elements();
@@ -106,12 +139,13 @@ public class JSATClusterer
    */
   @Override
   public void setOptions(String[] options) throws Exception {
-    DefaultProcessor proc = new DefaultProcessor();
+    JSATOptionProcessor proc = JSATOptionProcessor.getSingleton();
     String tmpStr = Utils.getOption(REGRESSOR, options);
     if (tmpStr.isEmpty())
       setClusterer(getDefaultClusterer());
     else
       setClusterer((Clusterer) proc.fromCommandline(tmpStr));
+    setUseViews(Utils.getFlag(USE_VIEWS, options));
     super.setOptions(options);
   }
 
@@ -123,7 +157,7 @@ public class JSATClusterer
   @Override
   public String[] getOptions() {
     List<String> result = new ArrayList<>();
-    DefaultProcessor proc = new DefaultProcessor();
+    JSATOptionProcessor proc = JSATOptionProcessor.getSingleton();
 
     try {
       result.add("-" + REGRESSOR);
@@ -134,6 +168,9 @@ public class JSATClusterer
       e.printStackTrace();
     }
 
+    if (getUseViews())
+      result.add("-" + USE_VIEWS);
+
     Collections.addAll(result, super.getOptions());
 
     return result.toArray(new String[result.size()]);
@@ -176,6 +213,41 @@ public class JSATClusterer
     return "The JSAT clusterer to use.";
   }
 
+  /**
+   * Sets whether to wrap the Weka data rather than copying it when training.
+   * NB: with views, the JSAT data shares its values with the training
+   * instances, i.e., a JSAT algorithm modifying its data modifies them as well.
+   *
+   * @param value	true if to use views
+   * @see		WekaToJSAT#setUseViews(boolean)
+   */
+  public void setUseViews(boolean value) {
+    m_UseViews = value;
+  }
+
+  /**
+   * Returns whether to wrap the Weka data rather than copying it when training.
+   *
+   * @return		true if to use views
+   * @see		WekaToJSAT#setUseViews(boolean)
+   */
+  public boolean getUseViews() {
+    return m_UseViews;
+  }
+
+  /**
+   * Returns the tip text for this property
+   *
+   * @return tip text for this property suitable for displaying in the
+   *         explorer/experimenter gui
+   */
+  public String useViewsTipText() {
+    return "If enabled, the JSAT data wraps the Weka data rather than copying it, "
+      + "reducing the memory footprint during training; the JSAT algorithm must not "
+      + "modify its training data, as any change is made to the values of the Weka "
+      + "instances passed in for training (and all copies sharing them).";
+  }
+
   /**
    * Returns the Capabilities of this classifier.
    *
@@ -195,8 +267,108 @@ public class JSATClusterer
   }
 
   /**
-   * Classifies a given instance. Either this or distributionForInstance() needs
-   * to be implemented by subclasses.
+   * Computes the centroids from the cluster assignments, weighting the rows
+   * with their instance weights. Missing values are ignored.
+   *
+   * @param dataset	the clustered data
+   * @param assignments	the cluster for each row (-1 if none)
+   * @return		the centroids, null for empty clusters
+   */
+  protected Vec[] computeCentroids(DataSet dataset, int[] assignments) {
+    Vec[]	result;
+    double[][]	sums;
+    double[][]	weights;
+    int		numClusters;
+    int		numNumeric;
+    int		i;
+    int		n;
+    Vec		vec;
+    double	value;
+    double	weight;
+
+    numClusters = 0;
+    for (i = 0; i < assignments.length; i++)
+      numClusters = Math.max(numClusters, assignments[i] + 1);
+    numNumeric = dataset.getNumNumericalVars();
+
+    sums   = new double[numClusters][numNumeric];
+    weights = new double[numClusters][numNumeric];
+    for (i = 0; i < assignments.length; i++) {
+      if (assignments[i] < 0)
+	continue;
+      vec    = dataset.getDataPoint(i).getNumericalValues();
+      weight = dataset.getDataPoint(i).getWeight();
+      for (n = 0; n < numNumeric; n++) {
+	value = vec.get(n);
+	if (Double.isNaN(value))
+	  continue;
+	sums[assignments[i]][n]    += weight * value;
+	weights[assignments[i]][n] += weight;
+      }
+    }
+
+    result = new Vec[numClusters];
+    for (i = 0; i < numClusters; i++) {
+      vec = new DenseVector(numNumeric);
+      for (n = 0; n < numNumeric; n++) {
+	if (weights[i][n] > 0)
+	  vec.set(n, sums[i][n] / weights[i][n]);
+      }
+      // empty cluster?
+      for (n = 0; n < numNumeric; n++) {
+	if (weights[i][n] > 0) {
+	  result[i] = vec;
+	  break;
+	}
+      }
+      if (numNumeric == 0)
+	result[i] = vec;
+    }
+
+    return result;
+  }
+
+  /**
+   * Builds the spatial index over the centroids.
+   *
+   * @return		the index
+   */
+  protected VPTree<VecPaired<Vec,Integer>> buildIndex() {
+    List<VecPaired<Vec,Integer>>	list;
+    int					i;
+
+    list = new ArrayList<>();
+    for (i = 0; i < m_Centroids.length; i++)
+      list.add(new VecPaired<Vec,Integer>(m_Centroids[i], i));
+
+    return new VPTree<>(list, new EuclideanDistance());
+  }
+
+  /**
+   * Returns the squared Euclidean distance between the vectors, ignoring
+   * missing values.
+   *
+   * @param centroid	the centroid
+   * @param vec		the vector to compute the distance for
+   * @return		the distance
+   */
+  protected double distance(Vec centroid, Vec vec) {
+    double	result;
+    double	diff;
+    int		i;
+
+    result = 0;
+    for (i = 0; i < centroid.length(); i++) {
+      diff = centroid.get(i) - vec.get(i);
+      if (!Double.isNaN(diff))
+	result += diff * diff;
+    }
+
+    return result;
+  }
+
+  /**
+   * Assigns the instance to the cluster with the nearest centroid.
    *
    * @param instance the instance to be assigned to a cluster
    * @return the number of the assigned cluster as an integer
@@ -204,22 +376,64 @@ public class JSATClusterer
    */
   @Override
   public int clusterInstance(Instance instance) throws Exception {
-    DataPoint			row;
-    DataSet			data;
-    List<List<DataPoint>>	result;
+    int		result;
+    DataPoint	row;
+    Vec		vec;
+    double	dist;
+    double	minDist;
+    int		i;
+
+    if (m_Centroids == null)
+      throw new IllegalStateException("No model built yet!");
+
+    row = m_WekaToJSAT.convertRowBuffered(instance);
+    vec = row.getNumericalValues();
+
+    // spatial index
+    if ((m_Centroids.length >= MIN_CLUSTERS_INDEX) && !hasMissingValue(vec)) {
+      if (m_Index == null) {
+	synchronized (this) {
+	  if (m_Index == null)
+	    m_Index = buildIndex();
+	}
+      }
+      return m_Index.search(vec, 1).get(0).getVector().getPair();
+    }
 
-    // convert into JSAT dataset with single row
-    row = m_WekaToJSAT.convertRow(instance);
-    data = new SimpleDataSet(Arrays.asList(row));
+    // linear scan
+    result  = -1;
+    minDist = Double.POSITIVE_INFINITY;
+    for (i = 0; i < m_Centroids.length; i++) {
+      dist = distance(m_Centroids[i], vec);
+      if (dist < minDist) {
+	minDist = dist;
+	result  = i;
+      }
+    }
 
-    result = m_Clusterer.cluster(data);
-    // TODO turn result into cluster index
+    return result;
+  }
 
-    return -1;
+  /**
+   * Checks whether the vector contains missing values.
+   *
+   * @param vec		the vector to check
+   * @return		true if missing values present
+   */
+  protected boolean hasMissingValue(Vec vec) {
+    int		i;
+
+    for (i = 0; i < vec.length(); i++) {
+      if (Double.isNaN(vec.get(i)))
+	return true;
+    }
+
+    return false;
   }
 
   /**
-   * Returns the number of clusters.
+   * Returns the number of clusters. Clusters that the JSAT clusterer left
+   * empty are not counted, the remaining ones are numbered consecutively.
    *
    * @return the number of clusters generated for a training dataset.
    * @exception Exception if number of clusters could not be returned
@@ -227,27 +441,71 @@ public class JSATClusterer
    */
   @Override
   public int numberOfClusters() throws Exception {
-    // TODO
-    return 0;
+    if (m_Centroids == null)
+      throw new IllegalStateException("No model built yet!");
+    return m_Centroids.length;
   }
 
   /**
    * Builds the clusterer on the dataset.
    *
    * @param instances	the dataset to use
-   * @throws Exception	if the build fails
+   * @throws Exception	if the build fails, the data has no numeric attributes
+   * 			or no clusters were found
    */
   @Override
   public void buildClusterer(Instances instances) throws Exception {
-    getCapabilities().testWithFail(instances);
+    int[]	assignments;
+    List<Vec>	centroids;
 
-    instances = new Instances(instances);
+    getCapabilities().testWithFail(instances);
 
     // convert into JSAT dataset
+    m_WekaToJSAT.setUseViews(m_UseViews);
     m_WekaToJSAT.initialize(instances);
+    if (m_WekaToJSAT.getNumNumericInputs() == 0)
+      throw new IllegalArgumentException(
+	"No numeric attributes, the cluster centroids only cover numeric attributes "
+	  + "(nominal ones can be turned into numeric ones with NominalToBinary)!");
     DataSet dataset = m_WekaToJSAT.convertDataset(instances);
 
     // build
-    m_Clusterer.cluster(dataset);
+    m_Centroids = null;
+    m_Index     = null;
+    assignments = m_Clusterer.cluster(dataset, new int[dataset.getSampleSize()]);
+
+    // drop empty clusters
+    centroids = new ArrayList<>();
+    for (Vec centroid: computeCentroids(dataset, assignments)) {
+      if (centroid != null)
+	centroids.add(centroid);
+    }
+    if (centroids.isEmpty())
+      throw new IllegalStateException(
+	m_Clusterer.getClass().getName() + " did not assign any of the "
+	  + dataset.getSampleSize() + " rows to a cluster (all noise?)!");
+    m_Centroids = centroids.toArray(new Vec[centroids.size()]);
+  }
+
+  /**
+   * Returns a short description of the model.
+   *
+   * @return		the description
+   */
+  @Override
+  public String toString() {
+    StringBuilder	result;
+    int			i;
+
+    if (m_Centroids == null)
+      return "No model built yet!";
+
+    result = new StringBuilder();
+    result.append("JSAT clusterer: ").append(m_Clusterer.getClass().getName()).append("\n");
+    result.append("Number of clusters: ").append(m_Centroids.length).append("\n");
+    for (i = 0; i < m_Centroids.length; i++)
+      result.append("Centroid ").append(i).append(": ").append(m_Centroids[i].toString()).append("\n");
+
+    return result.toString();
   }
 }
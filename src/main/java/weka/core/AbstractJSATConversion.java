@@ -21,9 +21,19 @@
 package weka.core;
 
 import java.io.Serializable;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
 
 /**
  * Ancestor for conversions.
+ * <br>
+ * Datasets can be converted in parallel (see {@link #setParallel(boolean)}):
+ * the rows get split into chunks (of at least {@link #setMinChunkSize(int)}
+ * rows) that are converted on a {@link ForkJoinPool}, preserving the order of
+ * the rows. Either the common pool gets used or, if a number of threads is
+ * set (see {@link #setNumThreads(int)}), a pool of that size. Datasets with
+ * fewer rows than the threshold (see {@link #setParallelThreshold(int)})
+ * always get converted sequentially.
  *
  * @author FracPete (fracpete at waikato dot ac dot nz)
  * @version $Revision$
@@ -35,6 +45,197 @@ import java.io.Serializable;
 public abstract class AbstractJSATConversion<FD,TD,FR,TR>
   implements Serializable {
 
+  /** the default minimum number of rows for parallel conversion. */
+  public final static int DEFAULT_PARALLEL_THRESHOLD = 10000;
+
+  /** the default minimum number of rows per chunk. */
+  public final static int DEFAULT_MIN_CHUNK_SIZE = 1000;
+
+  /**
+   * Interface for processing a range of rows.
+   */
+  protected interface RowRangeProcessor {
+
+    /**
+     * Processes the range of rows.
+     *
+     * @param from	the first row (incl)
+     * @param to		the last row (excl)
+     */
+    void process(int from, int to);
+  }
+
+  /**
+   * Splits a range of rows into chunks that get processed in parallel.
+   */
+  protected static class RowRangeTask
+    extends RecursiveAction {
+
+    /** the processor. */
+    protected RowRangeProcessor m_Processor;
+
+    /** the first row (incl). */
+    protected int m_From;
+
+    /** the last row (excl). */
+    protected int m_To;
+
+    /** the minimum chunk size. */
+    protected int m_ChunkSize;
+
+    /**
+     * Initializes the task.
+     *
+     * @param processor	the processor to use
+     * @param from	the first row (incl)
+     * @param to		the last row (excl)
+     * @param chunkSize	the minimum chunk size
+     */
+    public RowRangeTask(RowRangeProcessor processor, int from, int to, int chunkSize) {
+      m_Processor = processor;
+      m_From      = from;
+      m_To        = to;
+      m_ChunkSize = chunkSize;
+    }
+
+    /**
+     * Processes the range or, if both halves still have at least the chunk
+     * size, splits it in half. Chunks therefore have between the chunk size
+     * and twice the chunk size rows (unless the whole range is smaller).
+     */
+    @Override
+    protected void compute() {
+      int	mid;
+
+      if (m_To - m_From < 2 * m_ChunkSize) {
+	m_Processor.process(m_From, m_To);
+      }
+      else {
+	mid = (m_From + m_To) >>> 1;
+	invokeAll(
+	  new RowRangeTask(m_Processor, m_From, mid, m_ChunkSize),
+	  new RowRangeTask(m_Processor, mid, m_To, m_ChunkSize));
+      }
+    }
+  }
+
+  /** whether to convert datasets in parallel. */
+  protected boolean m_Parallel = false;
+
+  /** the minimum number of rows for converting in parallel. */
+  protected int m_ParallelThreshold = DEFAULT_PARALLEL_THRESHOLD;
+
+  /** the minimum number of rows per chunk. */
+  protected int m_MinChunkSize = DEFAULT_MIN_CHUNK_SIZE;
+
+  /** the number of threads for converting in parallel (0 = common pool). */
+  protected int m_NumThreads = 0;
+
+  /**
+   * Sets whether to convert datasets in parallel.
+   *
+   * @param value	true if parallel
+   */
+  public void setParallel(boolean value) {
+    m_Parallel = value;
+  }
+
+  /**
+   * Returns whether to convert datasets in parallel.
+   *
+   * @return		true if parallel
+   */
+  public boolean getParallel() {
+    return m_Parallel;
+  }
+
+  /**
+   * Sets the minimum number of rows for converting datasets in parallel.
+   *
+   * @param value	the minimum number of rows
+   */
+  public void setParallelThreshold(int value) {
+    m_ParallelThreshold = value;
+  }
+
+  /**
+   * Returns the minimum number of rows for converting datasets in parallel.
+   *
+   * @return		the minimum number of rows
+   */
+  public int getParallelThreshold() {
+    return m_ParallelThreshold;
+  }
+
+  /**
+   * Sets the minimum number of rows per chunk when converting in parallel.
+   *
+   * @param value	the minimum number of rows
+   */
+  public void setMinChunkSize(int value) {
+    m_MinChunkSize = value;
+  }
+
+  /**
+   * Returns the minimum number of rows per chunk when converting in parallel.
+   *
+   * @return		the minimum number of rows
+   */
+  public int getMinChunkSize() {
+    return m_MinChunkSize;
+  }
+
+  /**
+   * Sets the number of threads to use for converting in parallel.
+   *
+   * @param value	the number of threads, 0 to use the common pool
+   */
+  public void setNumThreads(int value) {
+    m_NumThreads = value;
+  }
+
+  /**
+   * Returns the number of threads to use for converting in parallel.
+   *
+   * @return		the number of threads, 0 to use the common pool
+   */
+  public int getNumThreads() {
+    return m_NumThreads;
+  }
+
+  /**
+   * Processes the rows, either sequentially or in parallel chunks.
+   *
+   * @param numRows	the number of rows to process
+   * @param processor	the processor to apply to the rows
+   * @see		#setParallel(boolean)
+   * @see		#setParallelThreshold(int)
+   * @see		#setMinChunkSize(int)
+   * @see		#setNumThreads(int)
+   */
+  protected void processRows(int numRows, RowRangeProcessor processor) {
+    ForkJoinPool	pool;
+    int			chunkSize;
+
+    if (!m_Parallel || (numRows < m_ParallelThreshold)) {
+      processor.process(0, numRows);
+    }
+    else if (m_NumThreads > 0) {
+      pool = new ForkJoinPool(m_NumThreads);
+      try {
+	chunkSize = Math.max(m_MinChunkSize, numRows / (pool.getParallelism() * 4));
+	pool.invoke(new RowRangeTask(processor, 0, numRows, chunkSize));
+      }
+      finally {
+	pool.shutdown();
+      }
+    }
+    else {
+      chunkSize = Math.max(m_MinChunkSize, numRows / (ForkJoinPool.getCommonPoolParallelism() * 4));
+      ForkJoinPool.commonPool().invoke(new RowRangeTask(processor, 0, numRows, chunkSize));
+    }
+  }
+
   /**
    * Initializes the conversion.
    *
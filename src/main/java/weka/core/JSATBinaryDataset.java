@@ -0,0 +1,495 @@
+/*
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/**
+ * JSATBinaryDataset.java
+ * Copyright (C) 2017 University of Waikato, Hamilton, NZ
+ */
+
+package weka.core;
+
+import jsat.DataSet;
+import jsat.SimpleDataSet;
+import jsat.classifiers.CategoricalData;
+import jsat.classifiers.ClassificationDataSet;
+import jsat.classifiers.DataPoint;
+import jsat.linear.DenseVector;
+import jsat.linear.Vec;
+import jsat.regression.RegressionDataSet;
+import weka.core.converters.ConverterUtils.DataSource;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.ObjectStreamException;
+import java.io.RandomAccessFile;
+import java.nio.DoubleBuffer;
+import java.nio.IntBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel.MapMode;
+
+/**
+ * Reads and writes JSAT datasets in a binary, columnar format that gets
+ * memory-mapped when reading. The numeric values of the rows are read-only
+ * views on the mapped file, i.e., they don't occupy any heap and the pages
+ * are shared between all JVMs that map the same file.
+ * <br>
+ * Layout (big endian):
+ * <pre>
+ * int magic, int version, int data offset
+ * header: byte type, int rows, int numeric, int categorical,
+ *         numeric names, categorical data (name, values), class data
+ * padding to 8 bytes
+ * double[numeric][rows] numeric columns
+ * double[rows] targets (classification/regression only)
+ * double[rows] weights
+ * int[categorical][rows] categorical columns
+ * </pre>
+ * Sparse data is stored in dense form. The data section is limited to 2GB.
+ * The column-major layout suits algorithms that scan columns (e.g., tree
+ * learners or transforms computing column statistics); accessing a row
+ * reads values that lie one column apart, i.e., row-wise access touches a
+ * different page per numeric attribute.
+ * <br>
+ * This is a standalone utility for using the same (large) dataset from
+ * several JVMs with JSAT directly, the Weka wrappers don't use it. As the
+ * numeric values are read-only, it is only suitable for JSAT algorithms
+ * that don't modify their training data.
+ *
+ * @author FracPete (fracpete at waikato dot ac dot nz)
+ * @version $Revision$
+ */
+public class JSATBinaryDataset {
+
+  /** the magic number ("JSAT"). */
+  public final static int MAGIC = 0x4A534154;
+
+  /** the version of the format. */
+  public final static int VERSION = 1;
+
+  /** the extension for cache files. */
+  public final static String EXTENSION = ".jsatbin";
+
+  /** simple dataset. */
+  public final static byte TYPE_SIMPLE = 0;
+
+  /** classification dataset. */
+  public final static byte TYPE_CLASSIFICATION = 1;
+
+  /** regression dataset. */
+  public final static byte TYPE_REGRESSION = 2;
+
+  /**
+   * Read-only vector for a row, backed by the numeric columns of the
+   * mapped file. The mapping does not survive serialization, hence a
+   * {@link DenseVector} with the values gets serialized instead.
+   */
+  public static class MappedRowVector
+    extends Vec {
+
+    private static final long serialVersionUID = -2204318931522613473L;
+
+    /** the numeric columns. */
+    protected transient DoubleBuffer m_Columns;
+
+    /** the number of rows in the dataset. */
+    protected int m_NumRows;
+
+    /** the row. */
+    protected int m_Row;
+
+    /** the number of numeric values. */
+    protected int m_Length;
+
+    /**
+     * Initializes the vector.
+     *
+     * @param columns	the numeric columns
+     * @param numRows	the number of rows in the dataset
+     * @param row	the row of this vector
+     * @param length	the number of numeric values
+     */
+    public MappedRowVector(DoubleBuffer columns, int numRows, int row, int length) {
+      m_Columns = columns;
+      m_NumRows = numRows;
+      m_Row     = row;
+      m_Length  = length;
+    }
+
+    /**
+     * Returns the number of values.
+     *
+     * @return		the length
+     */
+    @Override
+    public int length() {
+      return m_Length;
+    }
+
+    /**
+     * Returns the value at the specified index.
+     *
+     * @param index	the index
+     * @return		the value
+     */
+    @Override
+    public double get(int index) {
+      if ((index < 0) || (index >= m_Length))
+	throw new IndexOutOfBoundsException("Index " + index + " outside of [0," + m_Length + ")");
+      return m_Columns.get(index * m_NumRows + m_Row);
+    }
+
+    /**
+     * Not supported, the vector is read-only.
+     *
+     * @param index	ignored
+     * @param val	ignored
+     * @throws UnsupportedOperationException	always
+     */
+    @Override
+    public void set(int index, double val) {
+      throw new UnsupportedOperationException("Memory-mapped vectors are read-only!");
+    }
+
+    /**
+     * Returns false.
+     *
+     * @return		always false
+     */
+    @Override
+    public boolean isSparse() {
+      return false;
+    }
+
+    /**
+     * Returns a dense copy of the values, which can be modified.
+     *
+     * @return		the copy
+     */
+    @Override
+    public Vec clone() {
+      DenseVector	result;
+      int		i;
+
+      result = new DenseVector(m_Length);
+      for (i = 0; i < m_Length; i++)
+	result.set(i, get(i));
+
+      return result;
+    }
+
+    /**
+     * Serializes a dense copy of the values, as the mapped columns are not
+     * serializable.
+     *
+     * @return		the copy
+     * @throws ObjectStreamException	never
+     */
+    protected Object writeReplace() throws ObjectStreamException {
+      return clone();
+    }
+  }
+
+  /**
+   * Writes the categorical data.
+   *
+   * @param out		the stream to write to
+   * @param data	the data to write
+   * @throws IOException	if writing fails
+   */
+  protected static void writeCategoricalData(DataOutputStream out, CategoricalData data) throws IOException {
+    int		i;
+
+    out.writeUTF(data.getCategoryName());
+    out.writeInt(data.getNumOfCategories());
+    for (i = 0; i < data.getNumOfCategories(); i++)
+      out.writeUTF(data.getOptionName(i));
+  }
+
+  /**
+   * Reads the categorical data.
+   *
+   * @param in		the stream to read from
+   * @return		the data
+   * @throws IOException	if reading fails
+   */
+  protected static CategoricalData readCategoricalData(DataInputStream in) throws IOException {
+    CategoricalData	result;
+    String		name;
+    int			i;
+
+    name   = in.readUTF();
+    result = new CategoricalData(in.readInt());
+    result.setCategoryName(name);
+    for (i = 0; i < result.getNumOfCategories(); i++)
+      result.setOptionName(in.readUTF(), i);
+
+    return result;
+  }
+
+  /**
+   * Writes the dataset to the file.
+   *
+   * @param dataset	the dataset to write
+   * @param file	the file to write to
+   * @throws IOException	if writing fails
+   */
+  public static void write(DataSet dataset, File file) throws IOException {
+    ByteArrayOutputStream	header;
+    DataOutputStream		hout;
+    DataOutputStream		out;
+    CategoricalData[]		categories;
+    byte			type;
+    int				numRows;
+    int				numNumeric;
+    int				offset;
+    int				i;
+    int				n;
+
+    if (dataset instanceof ClassificationDataSet)
+      type = TYPE_CLASSIFICATION;
+    else if (dataset instanceof RegressionDataSet)
+      type = TYPE_REGRESSION;
+    else
+      type = TYPE_SIMPLE;
+    numRows    = dataset.getSampleSize();
+    numNumeric = dataset.getNumNumericalVars();
+    categories = dataset.getCategories();
+
+    // header
+    header = new ByteArrayOutputStream();
+    hout   = new DataOutputStream(header);
+    hout.writeByte(type);
+    hout.writeInt(numRows);
+    hout.writeInt(numNumeric);
+    hout.writeInt(categories.length);
+    for (i = 0; i < numNumeric; i++)
+      hout.writeUTF(dataset.getNumericName(i));
+    for (i = 0; i < categories.length; i++)
+      writeCategoricalData(hout, categories[i]);
+    if (type == TYPE_CLASSIFICATION)
+      writeCategoricalData(hout, ((ClassificationDataSet) dataset).getPredicting());
+    hout.flush();
+    offset = 12 + header.size();
+    offset = (offset + 7) / 8 * 8;
+
+    out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file), 65536));
+    try {
+      out.writeInt(MAGIC);
+      out.writeInt(VERSION);
+      out.writeInt(offset);
+      header.writeTo(out);
+      while (out.size() < offset)
+	out.writeByte(0);
+
+      // numeric columns
+      for (n = 0; n < numNumeric; n++) {
+	for (i = 0; i < numRows; i++)
+	  out.writeDouble(dataset.getDataPoint(i).getNumericalValues().get(n));
+      }
+
+      // targets
+      if (type == TYPE_CLASSIFICATION) {
+	for (i = 0; i < numRows; i++)
+	  out.writeDouble(((ClassificationDataSet) dataset).getDataPointCategory(i));
+      }
+      else if (type == TYPE_REGRESSION) {
+	for (i = 0; i < numRows; i++)
+	  out.writeDouble(((RegressionDataSet) dataset).getTargetValue(i));
+      }
+
+      // weights
+      for (i = 0; i < numRows; i++)
+	out.writeDouble(dataset.getDataPoint(i).getWeight());
+
+      // categorical columns
+      for (n = 0; n < categories.length; n++) {
+	for (i = 0; i < numRows; i++)
+	  out.writeInt(dataset.getDataPoint(i).getCategoricalValues()[n]);
+      }
+    }
+    finally {
+      out.close();
+    }
+  }
+
+  /**
+   * Memory-maps the file and returns it as dataset. The numeric values
+   * are read-only, i.e., JSAT algorithms that modify their training data
+   * (e.g., data transformations applied in place) will fail.
+   *
+   * @param file	the file to read
+   * @return		the dataset
+   * @throws IOException	if reading fails or the format is not supported
+   */
+  public static DataSet read(File file) throws IOException {
+    DataSet		result;
+    DataInputStream	in;
+    RandomAccessFile	raf;
+    MappedByteBuffer	buffer;
+    DoubleBuffer	doubles;
+    IntBuffer		ints;
+    CategoricalData[]	categories;
+    CategoricalData	predicting;
+    String[]		names;
+    DataPoint		point;
+    int[]		cats;
+    byte		type;
+    int			offset;
+    int			numRows;
+    int			numNumeric;
+    long		numDoubles;
+    long		size;
+    int			targets;
+    int			weights;
+    int			i;
+    int			n;
+
+    // header
+    in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+    try {
+      if (in.readInt() != MAGIC)
+	throw new IOException("Not a binary JSAT dataset: " + file);
+      n = in.readInt();
+      if (n != VERSION)
+	throw new IOException("Unsupported version " + n + " (expected: " + VERSION + "): " + file);
+      offset     = in.readInt();
+      type       = in.readByte();
+      numRows    = in.readInt();
+      numNumeric = in.readInt();
+      if ((numRows < 0) || (numNumeric < 0))
+	throw new IOException("Invalid dimensions (rows=" + numRows + ", numeric=" + numNumeric + "): " + file);
+      categories = new CategoricalData[in.readInt()];
+      names      = new String[numNumeric];
+      for (i = 0; i < numNumeric; i++)
+	names[i] = in.readUTF();
+      for (i = 0; i < categories.length; i++)
+	categories[i] = readCategoricalData(in);
+      predicting = null;
+      if (type == TYPE_CLASSIFICATION)
+	predicting = readCategoricalData(in);
+    }
+    finally {
+      in.close();
+    }
+
+    // data
+    numDoubles = ((long) numNumeric + (type == TYPE_SIMPLE ? 1 : 2)) * numRows;
+    size       = numDoubles * 8 + (long) categories.length * numRows * 4;
+    if (size > Integer.MAX_VALUE)
+      throw new IOException("Data section too large to map (" + size + " bytes): " + file);
+    if (offset + size > file.length())
+      throw new IOException("File truncated, expected " + (offset + size) + " bytes: " + file);
+    raf = new RandomAccessFile(file, "r");
+    try {
+      buffer = raf.getChannel().map(MapMode.READ_ONLY, offset, size);
+    }
+    finally {
+      // the mapping stays valid after closing the channel
+      raf.close();
+    }
+    doubles = buffer.asDoubleBuffer();
+    buffer.position((int) numDoubles * 8);
+    ints    = buffer.slice().asIntBuffer();
+    targets = numNumeric * numRows;
+    weights = targets + (type == TYPE_SIMPLE ? 0 : numRows);
+
+    if (type == TYPE_CLASSIFICATION)
+      result = new ClassificationDataSet(numNumeric, categories, predicting);
+    else if (type == TYPE_REGRESSION)
+      result = new RegressionDataSet(numNumeric, categories);
+    else
+      result = new SimpleDataSet(categories, numNumeric);
+    for (i = 0; i < numNumeric; i++)
+      result.setNumericName(names[i], i);
+
+    for (i = 0; i < numRows; i++) {
+      cats = new int[categories.length];
+      for (n = 0; n < categories.length; n++)
+	cats[n] = ints.get(n * numRows + i);
+      point = new DataPoint(
+	new MappedRowVector(doubles, numRows, i, numNumeric), cats, categories, doubles.get(weights + i));
+      if (type == TYPE_CLASSIFICATION)
+	((ClassificationDataSet) result).addDataPoint(point, (int) doubles.get(targets + i));
+      else if (type == TYPE_REGRESSION)
+	((RegressionDataSet) result).addDataPoint(point, doubles.get(targets + i));
+      else
+	((SimpleDataSet) result).add(point);
+    }
+
+    return result;
+  }
+
+  /**
+   * Returns the cache file for the dataset file and class index.
+   *
+   * @param file	the dataset file
+   * @param classIndex	the 0-based class index, -1 for none
+   * @return		the cache file
+   */
+  public static File getCacheFile(File file, int classIndex) {
+    return new File(file.getPath() + "." + (classIndex + 1) + EXTENSION);
+  }
+
+  /**
+   * Loads the dataset file (any format that Weka can read) as JSAT dataset.
+   * Uses the binary cache file next to the dataset file if it is newer
+   * than the dataset file, otherwise the dataset gets loaded, converted
+   * and written to the cache first. The cache gets written to a temporary
+   * file and then renamed, i.e., other JVMs never map a partial file.
+   * Rows with a missing class get skipped.
+   *
+   * @param file	the dataset file
+   * @param classIndex	the 0-based class index, -1 for none
+   * @return		the dataset
+   * @throws Exception	if loading, conversion or writing of the cache fails
+   * @see		#getCacheFile(File, int)
+   */
+  public static DataSet load(File file, int classIndex) throws Exception {
+    File	cache;
+    File	tmp;
+    Instances	data;
+    WekaToJSAT	conv;
+
+    cache = getCacheFile(file, classIndex);
+    if (!cache.exists() || (cache.lastModified() < file.lastModified())) {
+      data = DataSource.read(file.getAbsolutePath());
+      data.setClassIndex(classIndex);
+      conv = new WekaToJSAT();
+      conv.setSkipMissingClass(true);
+      conv.initialize(data);
+      tmp = File.createTempFile(cache.getName() + ".", ".tmp", cache.getAbsoluteFile().getParentFile());
+      try {
+	write(conv.convertDataset(data), tmp);
+	if (!tmp.renameTo(cache)) {
+	  cache.delete();
+	  if (!tmp.renameTo(cache))
+	    throw new IOException("Failed to rename " + tmp + " to " + cache);
+	}
+      }
+      finally {
+	tmp.delete();
+      }
+    }
+
+    return read(cache);
+  }
+}
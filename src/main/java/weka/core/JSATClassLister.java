@@ -22,8 +22,34 @@ package weka.core;
 
 import nz.ac.waikato.cms.locator.ClassLister;
 
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.URL;
+import java.security.CodeSource;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Properties;
+import java.util.Set;
+import java.util.logging.Level;
+import java.util.zip.CRC32;
+
 /**
  * ClassLister for JSAT.
+ * <br>
+ * Classes are determined lazily, per superclass, when first requested.
+ * The classnames are taken from the index resource generated at build time
+ * (see {@link #main(String[])}). If that is not available, the results of
+ * the classpath scans are stored in an index file in the Weka home
+ * directory, which gets invalidated when the JSAT jar or the
+ * package/blacklist configuration changes. Only the names get read from
+ * the index, the classes themselves only get loaded when requested.
  *
  * @author FracPete (fracpete at waikato dot ac dot nz)
  * @version $Revision$
@@ -31,12 +57,57 @@ import nz.ac.waikato.cms.locator.ClassLister;
 public class JSATClassLister
   extends ClassLister {
 
+  /** the version of the index format. */
+  public final static String INDEX_VERSION = "1";
+
+  /** the key for the version in the index. */
+  public final static String KEY_VERSION = "@version";
+
+  /** the key for the checksum of the JSAT jar in the index. */
+  public final static String KEY_CHECKSUM = "@checksum";
+
+  /** the key for the hash of the configuration in the index. */
+  public final static String KEY_CONFIG = "@config";
+
+  /** the index resource generated at build time. */
+  public final static String INDEX_RESOURCE = "weka/core/JSATClassLister.index";
+
+  /** whether to use the indices rather than scanning. */
+  protected boolean m_UseIndex;
+
+  /** the index resource with the classnames per superclass. */
+  protected Properties m_Resource;
+
+  /** the index file with the classnames per superclass. */
+  protected Properties m_Index;
+
+  /** whether the index file has been read. */
+  protected boolean m_IndexRead;
+
+  /** the superclasses for which the names have been determined. */
+  protected Set<String> m_NamesLoaded;
+
+  /** the superclasses for which the classes have been loaded. */
+  protected Set<String> m_ClassesLoaded;
+
   /**
    * Initializes the class lister.
    */
   protected JSATClassLister() {
+    this(true);
+  }
+
+  /**
+   * Initializes the class lister.
+   *
+   * @param useIndex	whether to use the indices, otherwise the classpath
+   * 			always gets scanned
+   */
+  protected JSATClassLister(boolean useIndex) {
     super();
 
+    m_UseIndex = useIndex;
+
     setPackages(load("weka/core/JSATClassLister.props"));
     setBlacklist(load("weka/core/JSATClassLister.blacklist"));
     setOnlyDefaultConstructor(true);
@@ -45,6 +116,395 @@ public class JSATClassLister
     initialize();
   }
 
+  /**
+   * Initializes the caches and reads the index resource. Does not scan the
+   * classpath, this happens on demand per superclass.
+   */
+  @Override
+  public void initialize() {
+    m_CacheNames    = new HashMap<>();
+    m_ListNames     = new HashMap<>();
+    m_CacheClasses  = new HashMap<>();
+    m_ListClasses   = new HashMap<>();
+    m_NamesLoaded   = new HashSet<>();
+    m_ClassesLoaded = new HashSet<>();
+    m_Index         = null;
+    m_IndexRead     = false;
+    m_Resource      = m_UseIndex ? readResource() : null;
+  }
+
+  /**
+   * Reads the index resource generated at build time.
+   *
+   * @return		the index, null if not available
+   */
+  protected Properties readResource() {
+    Properties	result;
+    InputStream	in;
+
+    in = JSATClassLister.class.getClassLoader().getResourceAsStream(INDEX_RESOURCE);
+    if (in == null)
+      return null;
+
+    result = new Properties();
+    try {
+      try {
+	result.load(in);
+      }
+      finally {
+	in.close();
+      }
+    }
+    catch (Exception e) {
+      getLogger().log(Level.WARNING, "Failed to read class index resource: " + INDEX_RESOURCE, e);
+      return null;
+    }
+
+    if (!INDEX_VERSION.equals(result.getProperty(KEY_VERSION)))
+      return null;
+
+    return result;
+  }
+
+  /**
+   * Writes the index resource, containing the classnames of all the
+   * superclasses, as determined by scanning the classpath.
+   *
+   * @param file	the file to write the index to
+   * @throws Exception	if writing fails
+   */
+  public static void writeResource(File file) throws Exception {
+    JSATClassLister	lister;
+    Properties		index;
+    List<String>	names;
+    OutputStream	out;
+
+    lister = new JSATClassLister(false);
+    index  = new Properties();
+    index.setProperty(KEY_VERSION, INDEX_VERSION);
+    for (String superclass: lister.getSuperclasses()) {
+      names = new ArrayList<>(Arrays.asList(lister.getClassnames(superclass)));
+      Collections.sort(names);
+      index.setProperty(superclass, String.join(",", names));
+    }
+
+    if (!file.getParentFile().exists() && !file.getParentFile().mkdirs())
+      throw new IllegalStateException("Failed to create directory: " + file.getParentFile());
+    out = new FileOutputStream(file);
+    try {
+      index.store(out, "JSAT class index");
+    }
+    finally {
+      out.close();
+    }
+  }
+
+  /**
+   * Returns the index file, reads it on first access.
+   *
+   * @return		the index, null if not available
+   */
+  protected Properties getIndex() {
+    if (!m_IndexRead) {
+      m_Index     = readIndex();
+      m_IndexRead = true;
+    }
+    return m_Index;
+  }
+
+  /**
+   * Returns the index file.
+   *
+   * @return		the file
+   */
+  public static File getIndexFile() {
+    return new File(WekaPackageManager.WEKA_HOME, "jsat" + File.separator + "classlister.index");
+  }
+
+  /**
+   * Computes the checksum of the jar containing the JSAT classes.
+   *
+   * @return		the checksum, null if JSAT not loaded from a jar
+   */
+  protected static String checksum() {
+    CodeSource	source;
+    URL		location;
+    File	file;
+    InputStream	in;
+    CRC32	crc;
+    byte[]	buffer;
+    int		read;
+
+    try {
+      source = jsat.DataSet.class.getProtectionDomain().getCodeSource();
+      if (source == null)
+	return null;
+      location = source.getLocation();
+      if ((location == null) || !location.getProtocol().equals("file"))
+	return null;
+      file = new File(location.toURI());
+      if (!file.isFile())
+	return null;
+      crc    = new CRC32();
+      buffer = new byte[65536];
+      in     = new FileInputStream(file);
+      try {
+	while ((read = in.read(buffer)) > 0)
+	  crc.update(buffer, 0, read);
+      }
+      finally {
+	in.close();
+      }
+      return file.length() + "-" + Long.toHexString(crc.getValue());
+    }
+    catch (Exception e) {
+      return null;
+    }
+  }
+
+  /**
+   * Returns the hash of the package and blacklist configuration.
+   *
+   * @return		the hash
+   */
+  protected String configHash() {
+    return Integer.toHexString((m_Packages.toString() + "\n" + m_Blacklist.toString()).hashCode());
+  }
+
+  /**
+   * Reads the index, if still valid. Returns an empty index if the file
+   * does not exist or is outdated, null if JSAT is not loaded from a jar.
+   *
+   * @return		the index, null if no index can be used
+   */
+  protected Properties readIndex() {
+    Properties	result;
+    Properties	index;
+    File	file;
+    InputStream	in;
+    String	checksum;
+
+    checksum = checksum();
+    if (checksum == null)
+      return null;
+
+    result = new Properties();
+    result.setProperty(KEY_VERSION, INDEX_VERSION);
+    result.setProperty(KEY_CHECKSUM, checksum);
+    result.setProperty(KEY_CONFIG, configHash());
+
+    file = getIndexFile();
+    if (!file.exists())
+      return result;
+
+    index = new Properties();
+    try {
+      in = new FileInputStream(file);
+      try {
+	index.load(in);
+      }
+      finally {
+	in.close();
+      }
+    }
+    catch (Exception e) {
+      getLogger().log(Level.WARNING, "Failed to read class index: " + file, e);
+      return result;
+    }
+
+    if (!INDEX_VERSION.equals(index.getProperty(KEY_VERSION))
+      || !checksum.equals(index.getProperty(KEY_CHECKSUM))
+      || !result.getProperty(KEY_CONFIG).equals(index.getProperty(KEY_CONFIG)))
+      return result;
+
+    return index;
+  }
+
+  /**
+   * Writes the index. Writes to a temporary file first, which then gets
+   * renamed, so that concurrent JVMs never see a partial index.
+   */
+  protected void writeIndex() {
+    File		file;
+    File		tmp;
+    OutputStream	out;
+
+    if (m_Index == null)
+      return;
+
+    file = getIndexFile();
+    try {
+      if (!file.getParentFile().exists() && !file.getParentFile().mkdirs())
+	return;
+      tmp = File.createTempFile("classlister", ".tmp", file.getParentFile());
+      out = new FileOutputStream(tmp);
+      try {
+	m_Index.store(out, "JSAT class index");
+      }
+      finally {
+	out.close();
+      }
+      if (!tmp.renameTo(file)) {
+	file.delete();
+	if (!tmp.renameTo(file))
+	  tmp.delete();
+      }
+    }
+    catch (Exception e) {
+      getLogger().log(Level.WARNING, "Failed to write class index: " + file, e);
+    }
+  }
+
+  /**
+   * Scans the classpath for the classes of the superclass.
+   *
+   * @param superclass	the superclass to scan for
+   */
+  protected void scan(String superclass) {
+    String	packages;
+
+    packages = m_Packages.getProperty(superclass);
+    if (packages == null)
+      return;
+
+    try {
+      addHierarchy(superclass, packages.replaceAll("\\s", "").split(","));
+    }
+    catch (Exception e) {
+      getLogger().log(Level.SEVERE, "Failed to determine classes for superclass '" + superclass + "':", e);
+    }
+    m_ClassesLoaded.add(superclass);
+  }
+
+  /**
+   * Determines the classnames of the superclass, either from the index or
+   * by scanning the classpath (and updating the index).
+   *
+   * @param superclass	the superclass to get the names for
+   */
+  protected synchronized void loadNames(String superclass) {
+    List<String>	names;
+    String		indexed;
+
+    if (m_NamesLoaded.contains(superclass))
+      return;
+    m_NamesLoaded.add(superclass);
+
+    indexed = null;
+    if (m_UseIndex) {
+      if (m_Resource != null)
+	indexed = m_Resource.getProperty(superclass);
+      if ((indexed == null) && (getIndex() != null))
+	indexed = getIndex().getProperty(superclass);
+    }
+    if (indexed != null) {
+      names = new ArrayList<>();
+      if (!indexed.isEmpty())
+	names.addAll(Arrays.asList(indexed.split(",")));
+      updateClassnames(m_CacheNames, superclass, new HashSet<>(names));
+      updateClassnames(m_ListNames, superclass, new ArrayList<>(names));
+      return;
+    }
+
+    scan(superclass);
+    if (m_UseIndex && (getIndex() != null) && m_Packages.containsKey(superclass)) {
+      names = m_ListNames.get(superclass);
+      m_Index.setProperty(superclass, (names == null) ? "" : String.join(",", names));
+      writeIndex();
+    }
+  }
+
+  /**
+   * Loads the classes of the superclass. Classes that can no longer be
+   * loaded get skipped.
+   *
+   * @param superclass	the superclass to load the classes for
+   */
+  protected synchronized void loadClasses(String superclass) {
+    List<Class>	classes;
+    List<String>	names;
+
+    loadNames(superclass);
+    if (m_ClassesLoaded.contains(superclass))
+      return;
+    m_ClassesLoaded.add(superclass);
+
+    classes = new ArrayList<>();
+    names   = m_ListNames.get(superclass);
+    if (names != null) {
+      for (String name: names) {
+	try {
+	  classes.add(Class.forName(name));
+	}
+	catch (Throwable t) {
+	  getLogger().log(Level.WARNING, "Failed to load class: " + name, t);
+	}
+      }
+    }
+    updateClasses(m_CacheClasses, superclass, new HashSet<>(classes));
+    updateClasses(m_ListClasses, superclass, new ArrayList<>(classes));
+  }
+
+  /**
+   * Returns the configured superclasses, without scanning the classpath.
+   *
+   * @return		the superclasses (sorted)
+   */
+  @Override
+  public String[] getSuperclasses() {
+    List<String>	result;
+
+    result = new ArrayList<>(m_Packages.stringPropertyNames());
+    Collections.sort(result);
+
+    return result.toArray(new String[result.size()]);
+  }
+
+  /**
+   * Returns the names of the classes derived from the superclass, without
+   * loading the classes.
+   *
+   * @param superclass	the superclass to get the names for
+   * @return		the classnames
+   */
+  public String[] getClassnames(String superclass) {
+    List<String>	result;
+
+    loadNames(superclass);
+    synchronized(this) {
+      result = m_ListNames.get(superclass);
+      if (result == null)
+	return new String[0];
+      return result.toArray(new String[result.size()]);
+    }
+  }
+
+  /**
+   * Returns the names of the classes derived from the superclass, without
+   * loading the classes.
+   *
+   * @param superclass	the superclass to get the names for
+   * @return		the classnames
+   */
+  @Override
+  public String[] getClassnames(Class superclass) {
+    return getClassnames(superclass.getName());
+  }
+
+  /**
+   * Returns the classes derived from the superclass.
+   *
+   * @param superclass	the superclass to get the classes for
+   * @return		the classes
+   */
+  @Override
+  public Class[] getClasses(String superclass) {
+    loadClasses(superclass);
+    synchronized(this) {
+      return super.getClasses(superclass);
+    }
+  }
+
   /**
    * Returns the singleton instance of the class lister.
    *
@@ -59,10 +519,25 @@ public class JSATClassLister
 
   /**
    * Just outputs all the managed superclasses and the associated classes.
+   * With "-index &lt;file&gt;", the classpath gets scanned and the index
+   * resource written to the file instead (used at build time).
    *
-   * @param args	ignored
+   * @param args	the options
+   * @throws Exception	if writing the index fails
    */
-  public static void main(String[] args) {
-    System.out.println(JSATClassLister.getSingleton());
+  public static void main(String[] args) throws Exception {
+    ClassLister	lister;
+    String	index;
+
+    index = Utils.getOption("index", args);
+    if (!index.isEmpty()) {
+      writeResource(new File(index));
+      return;
+    }
+
+    lister = JSATClassLister.getSingleton();
+    for (String superclass: lister.getSuperclasses())
+      lister.getClasses(superclass);
+    System.out.println(lister);
   }
 }
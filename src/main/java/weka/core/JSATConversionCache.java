@@ -0,0 +1,206 @@
+/*
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/**
+ * JSATConversionCache.java
+ * Copyright (C) 2017 University of Waikato, Hamilton, NZ
+ */
+
+package weka.core;
+
+import jsat.classifiers.DataPoint;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+/**
+ * Caches converted rows, so that overlapping subsets of the same data (e.g.,
+ * the training sets of a cross-validation) only get converted once.
+ * <br>
+ * Copies of Weka instances (as generated by {@link Instances#trainCV(int, int)},
+ * {@link Instances#Instances(Instances)} etc) share their array of values
+ * with the original instance. The rows are therefore keyed by the identity
+ * of that array, which the cache only references weakly, i.e., rows get
+ * dropped once no more instances use them. Rows are grouped by dataset
+ * structure and only the most recently used structures are kept. Copies of
+ * a dataset share their list of attributes as well, hence the structure is
+ * identified by that list (identity) and the class index.
+ * <br>
+ * The cached rows must be treated as read-only: users of the cache only
+ * get shallow copies of the rows, which share the values of the cached
+ * rows but have their own weight.
+ *
+ * @author FracPete (fracpete at waikato dot ac dot nz)
+ * @version $Revision$
+ */
+public class JSATConversionCache {
+
+  /** the default number of dataset structures to keep. */
+  public final static int DEFAULT_MAX_DATASETS = 5;
+
+  /** the singleton. */
+  protected static JSATConversionCache m_Singleton;
+
+  /** the maximum number of dataset structures to keep. */
+  protected int m_MaxDatasets;
+
+  /**
+   * Identifies a dataset structure via the identity of the attribute list
+   * and the class index.
+   */
+  protected static class StructureKey {
+
+    /** the attribute list. */
+    protected Object m_Attributes;
+
+    /** the class index. */
+    protected int m_ClassIndex;
+
+    /**
+     * Initializes the key.
+     *
+     * @param dataset	the dataset to create the key for
+     */
+    public StructureKey(Instances dataset) {
+      m_Attributes = dataset.m_Attributes;
+      m_ClassIndex = dataset.classIndex();
+    }
+
+    /**
+     * Returns whether the keys refer to the same attribute list and class index.
+     *
+     * @param obj	the object to compare with
+     * @return		true if the same
+     */
+    @Override
+    public boolean equals(Object obj) {
+      StructureKey	other;
+
+      if (!(obj instanceof StructureKey))
+	return false;
+      other = (StructureKey) obj;
+      return (m_Attributes == other.m_Attributes) && (m_ClassIndex == other.m_ClassIndex);
+    }
+
+    /**
+     * Returns the hash code, based on the identity of the attribute list.
+     *
+     * @return		the hash code
+     */
+    @Override
+    public int hashCode() {
+      return 31 * System.identityHashCode(m_Attributes) + m_ClassIndex;
+    }
+  }
+
+  /** the cached rows per dataset structure (least recently used first). */
+  protected LinkedHashMap<StructureKey, Map<Object, DataPoint>> m_Datasets;
+
+  /**
+   * Initializes the cache with the default number of datasets.
+   */
+  public JSATConversionCache() {
+    this(DEFAULT_MAX_DATASETS);
+  }
+
+  /**
+   * Initializes the cache.
+   *
+   * @param maxDatasets	the maximum number of dataset structures to keep
+   */
+  public JSATConversionCache(int maxDatasets) {
+    m_MaxDatasets = maxDatasets;
+    m_Datasets    = new LinkedHashMap<StructureKey, Map<Object, DataPoint>>(16, 0.75f, true) {
+      private static final long serialVersionUID = 6411546418862530386L;
+      @Override
+      protected boolean removeEldestEntry(Map.Entry<StructureKey, Map<Object, DataPoint>> eldest) {
+	return size() > m_MaxDatasets;
+      }
+    };
+  }
+
+  /**
+   * Sets the maximum number of dataset structures to keep.
+   *
+   * @param value	the maximum
+   */
+  public synchronized void setMaxDatasets(int value) {
+    m_MaxDatasets = value;
+  }
+
+  /**
+   * Returns the maximum number of dataset structures to keep.
+   *
+   * @return		the maximum
+   */
+  public synchronized int getMaxDatasets() {
+    return m_MaxDatasets;
+  }
+
+  /**
+   * Returns the cached rows for the dataset structure. Makes the structure
+   * the most recently used one. The rows must not get modified.
+   *
+   * @param dataset	the dataset to get the rows for
+   * @return		the rows (synchronized)
+   */
+  public synchronized Map<Object, DataPoint> getRows(Instances dataset) {
+    Map<Object, DataPoint>	result;
+    StructureKey		key;
+
+    key    = new StructureKey(dataset);
+    result = m_Datasets.get(key);
+    if (result == null) {
+      result = Collections.synchronizedMap(new WeakHashMap<Object, DataPoint>());
+      m_Datasets.put(key, result);
+    }
+
+    return result;
+  }
+
+  /**
+   * Returns the key for the row, ie the array of values that is shared
+   * between copies.
+   *
+   * @param inst	the row to get the key for
+   * @return		the key
+   */
+  public static Object getKey(Instance inst) {
+    if (inst instanceof AbstractInstance)
+      return ((AbstractInstance) inst).m_AttValues;
+    else
+      return inst;
+  }
+
+  /**
+   * Removes all cached rows.
+   */
+  public synchronized void clear() {
+    m_Datasets.clear();
+  }
+
+  /**
+   * Returns the cache that is shared by all wrappers.
+   *
+   * @return		the cache
+   */
+  public static synchronized JSATConversionCache getSingleton() {
+    if (m_Singleton == null)
+      m_Singleton = new JSATConversionCache();
+    return m_Singleton;
+  }
+}
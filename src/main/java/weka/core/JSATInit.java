@@ -22,35 +22,90 @@ package weka.core;
 
 import weka.gui.GenericObjectEditor;
 
+import java.awt.GraphicsEnvironment;
+import java.util.Arrays;
 import java.util.HashSet;
 import java.util.Set;
 
 /**
- * Performs initializations.
+ * Performs initializations. Registers the JSAT classes as plugins using
+ * the classnames from the {@link JSATClassLister} index, without loading
+ * the classes.
+ * <br>
+ * In headless mode, only the plugins get registered and the initialization
+ * of the {@link GenericObjectEditor} is left to the GUI (if any). Headless
+ * mode is determined by the system property {@link #HEADLESS}, defaulting to
+ * {@link GraphicsEnvironment#isHeadless()}, e.g.:
+ * <pre>
+ * java -Dweka.jsat.headless=true ...
+ * </pre>
  *
  * @author FracPete (fracpete at waikato dot ac dot nz)
  * @version $Revision$
  */
 public class JSATInit {
 
+  /** the system property for enabling/disabling headless mode. */
+  public final static String HEADLESS = "weka.jsat.headless";
+
   static {
+    if (!isHeadless())
+      initializeEditor();
+    registerPlugins();
+  }
+
+  /**
+   * Returns whether to run in headless mode.
+   *
+   * @return		true if headless
+   */
+  public static boolean isHeadless() {
+    String	value;
+
+    value = System.getProperty(HEADLESS);
+    if (value != null)
+      return Boolean.parseBoolean(value);
+
+    return GraphicsEnvironment.isHeadless();
+  }
+
+  /**
+   * Initializes the {@link GenericObjectEditor}. Only referenced from here,
+   * so that the GUI classes don't get loaded in headless mode.
+   */
+  protected static void initializeEditor() {
     GenericObjectEditor.determineClasses();
-    for (String superclass: JSATClassLister.getSingleton().getSuperclasses()) {
-      Class[] classes = JSATClassLister.getSingleton().getClasses(superclass);
+  }
+
+  /**
+   * Registers the JSAT classes with the {@link PluginManager}.
+   */
+  protected static void registerPlugins() {
+    JSATClassLister lister = (JSATClassLister) JSATClassLister.getSingleton();
+    for (String superclass: lister.getSuperclasses()) {
+      // names only, classes get loaded on demand
+      String[] classnames = lister.getClassnames(superclass);
       Set<String> registered = PluginManager.getPluginNamesOfType(superclass);
       // remove invalid classes
       if (registered != null) {
-	Set<String> valid = new HashSet<>();
-	for (Class cls: classes)
-	  valid.add(cls.getName());
+	Set<String> valid = new HashSet<>(Arrays.asList(classnames));
 	registered.removeAll(valid);
 	for (String cls : registered)
 	  PluginManager.addToDisabledList(cls);
       }
       else {
-	for (Class cls: classes)
-	  PluginManager.addPlugin(superclass, superclass, cls.getName());
+	for (String cls: classnames)
+	  PluginManager.addPlugin(superclass, superclass, cls);
       }
     }
   }
+
+  /**
+   * Ensures that the initialization has been performed. Can be used by
+   * command-line/API code, which does not go through the
+   * {@link GenericObjectEditor}.
+   */
+  public static void initialize() {
+    // static initializer does the work
+  }
 }
@@ -0,0 +1,174 @@
+/*
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/**
+ * JSATOptionProcessor.java
+ * Copyright (C) 2017 University of Waikato, Hamilton, NZ
+ */
+
+package weka.core;
+
+import nz.ac.waikato.cms.jenericcmdline.DefaultProcessor;
+
+import java.lang.reflect.Method;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Converts JSAT objects from and to command-lines, shared by all wrappers.
+ * <br>
+ * Parsing is cached: the objects parsed from the most recently used
+ * command-lines are kept as templates and copies of them get returned,
+ * using the public clone() method that JSAT algorithms offer (looked up
+ * once per class). Objects without such a method always get parsed. Each
+ * thread uses its own processor, rather than creating one per call.
+ *
+ * @author FracPete (fracpete at waikato dot ac dot nz)
+ * @version $Revision$
+ */
+public class JSATOptionProcessor {
+
+  /** the default number of command-lines to cache. */
+  public final static int DEFAULT_MAX_TEMPLATES = 100;
+
+  /** the singleton. */
+  protected static JSATOptionProcessor m_Singleton;
+
+  /** the processor per thread. */
+  protected ThreadLocal<DefaultProcessor> m_Processor;
+
+  /** the maximum number of command-lines to cache. */
+  protected int m_MaxTemplates;
+
+  /** the parsed objects per command-line (least recently used first). */
+  protected LinkedHashMap<String, Object> m_Templates;
+
+  /** the clone methods per class (null if none available). */
+  protected Map<Class, Method> m_CloneMethods;
+
+  /**
+   * Initializes the processor with the default number of command-lines.
+   */
+  public JSATOptionProcessor() {
+    this(DEFAULT_MAX_TEMPLATES);
+  }
+
+  /**
+   * Initializes the processor.
+   *
+   * @param maxTemplates	the maximum number of command-lines to cache
+   */
+  public JSATOptionProcessor(int maxTemplates) {
+    m_MaxTemplates = maxTemplates;
+    m_Processor    = new ThreadLocal<DefaultProcessor>() {
+      @Override
+      protected DefaultProcessor initialValue() {
+	return new DefaultProcessor();
+      }
+    };
+    m_CloneMethods = new HashMap<>();
+    m_Templates    = new LinkedHashMap<String, Object>(16, 0.75f, true) {
+      private static final long serialVersionUID = -2265937401729412043L;
+      @Override
+      protected boolean removeEldestEntry(Map.Entry<String, Object> eldest) {
+	return size() > m_MaxTemplates;
+      }
+    };
+  }
+
+  /**
+   * Returns the public clone() method of the class.
+   *
+   * @param cls		the class to get the method for
+   * @return		the method, null if not available
+   */
+  protected synchronized Method getCloneMethod(Class cls) {
+    Method	result;
+
+    if (m_CloneMethods.containsKey(cls))
+      return m_CloneMethods.get(cls);
+
+    try {
+      result = cls.getMethod("clone");
+    }
+    catch (Exception e) {
+      result = null;
+    }
+    m_CloneMethods.put(cls, result);
+
+    return result;
+  }
+
+  /**
+   * Parses the command-line.
+   *
+   * @param cmdline	the command-line to parse
+   * @return		the generated object
+   * @throws Exception	if parsing fails
+   */
+  public Object fromCommandline(String cmdline) throws Exception {
+    Object	template;
+    Method	clone;
+
+    synchronized(this) {
+      template = m_Templates.get(cmdline);
+    }
+
+    if (template == null) {
+      template = m_Processor.get().fromCommandline(cmdline);
+      clone    = getCloneMethod(template.getClass());
+      if (clone == null)
+	return template;
+      synchronized(this) {
+	m_Templates.put(cmdline, template);
+      }
+    }
+    else {
+      clone = getCloneMethod(template.getClass());
+    }
+
+    return clone.invoke(template);
+  }
+
+  /**
+   * Generates the command-line for the object.
+   *
+   * @param obj		the object to generate the command-line for
+   * @return		the command-line
+   * @throws Exception	if generating fails
+   */
+  public String toCommandline(Object obj) throws Exception {
+    return m_Processor.get().toCommandline(obj);
+  }
+
+  /**
+   * Removes all cached command-lines.
+   */
+  public synchronized void clear() {
+    m_Templates.clear();
+  }
+
+  /**
+   * Returns the processor that is shared by all wrappers.
+   *
+   * @return		the processor
+   */
+  public static synchronized JSATOptionProcessor getSingleton() {
+    if (m_Singleton == null)
+      m_Singleton = new JSATOptionProcessor();
+    return m_Singleton;
+  }
+}
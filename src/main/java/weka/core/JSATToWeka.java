@@ -24,14 +24,19 @@ import jsat.DataSet;
 import jsat.classifiers.CategoricalData;
 import jsat.classifiers.ClassificationDataSet;
 import jsat.classifiers.DataPoint;
+import jsat.linear.IndexValue;
 import jsat.linear.Vec;
 import jsat.regression.RegressionDataSet;
 
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
 import java.util.List;
 
 /**
  * Converts from JSAT to WEKA.
+ * Rows with sparse numeric vectors get turned into {@link SparseInstance}
+ * objects, all other rows into {@link DenseInstance} ones.
  *
  * @author FracPete (fracpete at waikato dot ac dot nz)
  * @version $Revision$
@@ -91,55 +96,112 @@ public class JSATToWeka
     m_Header = new Instances("JSAT", atts, dataset.getSampleSize());
   }
 
+  /**
+   * Generates the Weka instance from the JSAT values.
+   *
+   * @param num		the numeric values
+   * @param cats	the categorical values
+   * @param classValue	the class value, ignored if no class attribute
+   * @param weight	the weight of the row
+   * @return		the instance
+   */
+  protected Instance newInstance(Vec num, int[] cats, double classValue, double weight) {
+    double[]			values;
+    int[]			indices;
+    int				numValues;
+    int				n;
+    Iterator<IndexValue>	iter;
+    IndexValue			iv;
+
+    // only non-zero values
+    if (num.isSparse()) {
+      values    = new double[num.nnz() + cats.length + 1];
+      indices   = new int[values.length];
+      numValues = 0;
+      iter      = num.getNonZeroIterator();
+      while (iter.hasNext()) {
+	iv                 = iter.next();
+	indices[numValues] = iv.getIndex();
+	values[numValues]  = iv.getValue();
+	numValues++;
+      }
+      for (n = 0; n < cats.length; n++) {
+	if (cats[n] == 0)
+	  continue;
+	indices[numValues] = num.length() + n;
+	values[numValues]  = (cats[n] == -1) ? Utils.missingValue() : cats[n];
+	numValues++;
+      }
+      if ((m_RegDataset || m_CatDataset) && (classValue != 0)) {
+	indices[numValues] = m_Header.numAttributes() - 1;
+	values[numValues]  = classValue;
+	numValues++;
+      }
+      if (numValues < values.length) {
+	values  = Arrays.copyOf(values, numValues);
+	indices = Arrays.copyOf(indices, numValues);
+      }
+      return new SparseInstance(weight, values, indices, m_Header.numAttributes());
+    }
+
+    values = new double[m_Header.numAttributes()];
+    for (n = 0; n < num.length(); n++)
+      values[n] = num.get(n);
+    for (n = 0; n < cats.length; n++) {
+      if (cats[n] == -1)
+	values[num.length() + n] = Utils.missingValue();
+      else
+	values[num.length() + n] = cats[n];
+    }
+    if (m_RegDataset || m_CatDataset)
+      values[values.length - 1] = classValue;
+
+    return new DenseInstance(weight, values);
+  }
+
   /**
    * Converts the dataset.
    *
    * @param dataset	the dataset to convert
    * @return		the converted dataset
    * @see		#initialize(Object)
+   * @see		#setParallel(boolean)
    */
   @Override
-  public Instances convertDataset(DataSet dataset) {
+  public Instances convertDataset(final DataSet dataset) {
     Instances			result;
-    Instance			inst;
-    DataPoint			dp;
-    double[]			values;
+    final Instance[]		rows;
     int				i;
-    int				n;
-    Vec num;
-    int[]			cats;
 
     if (m_Header == null)
       throw new IllegalStateException("initialize method not called!");
 
-    result = new Instances(m_Header);
-
-    for (i = 0; i < dataset.getSampleSize(); i++) {
-      values = new double[result.numAttributes()];
-      dp     = dataset.getDataPoint(i);
-      num    = dp.getNumericalValues();
-      cats   = dp.getCategoricalValues();
-      for (n = 0; n < num.length(); n++)
-        values[n] = num.get(n);
-      for (n = 0; n < cats.length; n++) {
-        if (cats[n] == -1)
-          values[num.length() + n] = Utils.missingValue();
-        else
-          values[num.length() + n] = cats[n];
-      }
-      if (m_RegDataset) {
-        values[values.length - 1] = ((RegressionDataSet) dataset).getTargetValue(i);
-      }
-      else if (m_CatDataset) {
-        n = ((ClassificationDataSet) dataset).getDataPointCategory(i);
-        if (n == -1)
-          values[values.length - 1] = Utils.missingValue();
-        else
-          values[values.length - 1] = ((ClassificationDataSet) dataset).getDataPointCategory(i);
+    rows = new Instance[dataset.getSampleSize()];
+    processRows(rows.length, new RowRangeProcessor() {
+      @Override
+      public void process(int from, int to) {
+	DataPoint dp;
+	double classValue;
+	int cls;
+	for (int n = from; n < to; n++) {
+	  dp         = dataset.getDataPoint(n);
+	  classValue = Utils.missingValue();
+	  if (m_RegDataset) {
+	    classValue = ((RegressionDataSet) dataset).getTargetValue(n);
+	  }
+	  else if (m_CatDataset) {
+	    cls = ((ClassificationDataSet) dataset).getDataPointCategory(n);
+	    if (cls != -1)
+	      classValue = cls;
+	  }
+	  rows[n] = newInstance(dp.getNumericalValues(), dp.getCategoricalValues(), classValue, dp.getWeight());
+	}
       }
-      inst = new DenseInstance(dp.getWeight(), values);
-      result.add(inst);
-    }
+    });
+
+    result = new Instances(m_Header, rows.length);
+    for (i = 0; i < rows.length; i++)
+      result.add(rows[i]);
 
     return result;
   }
@@ -154,29 +216,9 @@ public class JSATToWeka
    */
   @Override
   public Instance convertRow(DataPoint row) {
-    Instance	inst;
-    double[]	values;
-    int		n;
-    Vec 	num;
-    int[]	cats;
-
     if (m_Header == null)
       throw new IllegalStateException("initialize method not called!");
 
-    values = new double[m_Header.numAttributes()];
-    num    = row.getNumericalValues();
-    cats   = row.getCategoricalValues();
-    for (n = 0; n < num.length(); n++)
-      values[n] = num.get(n);
-    for (n = 0; n < cats.length; n++) {
-      if (cats[n] == -1)
-        values[num.length() + n] = Utils.missingValue();
-      else
-        values[num.length() + n] = cats[n];
-    }
-    values[values.length - 1] = Utils.missingValue();
-    inst = new DenseInstance(row.getWeight(), values);
-
-    return inst;
+    return newInstance(row.getNumericalValues(), row.getCategoricalValues(), Utils.missingValue(), row.getWeight());
   }
 }
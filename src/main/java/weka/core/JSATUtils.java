@@ -0,0 +1,104 @@
+/*
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/**
+ * JSATUtils.java
+ * Copyright (C) 2017 University of Waikato, Hamilton, NZ
+ */
+
+package weka.core;
+
+import jsat.classifiers.CategoricalResults;
+
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Helper methods for the JSAT wrappers.
+ *
+ * @author FracPete (fracpete at waikato dot ac dot nz)
+ * @version $Revision$
+ */
+public class JSATUtils {
+
+  /** the counter for the thread names. */
+  protected static AtomicInteger m_ThreadCount = new AtomicInteger();
+
+  /**
+   * Returns the number of threads to use for the specified number of
+   * execution slots.
+   *
+   * @param numSlots	the number of slots, less than 1 to use all cores
+   * @return		the number of threads
+   */
+  public static int getNumThreads(int numSlots) {
+    if (numSlots < 1)
+      return Runtime.getRuntime().availableProcessors();
+    else
+      return numSlots;
+  }
+
+  /**
+   * Creates a new thread pool for the specified number of execution slots.
+   * The threads are daemon threads, i.e., they don't prevent the JVM from
+   * exiting. Callers are responsible for shutting down the pool.
+   *
+   * @param numSlots	the number of slots, less than 1 to use all cores
+   * @return		the thread pool
+   */
+  public static ExecutorService newExecutor(int numSlots) {
+    return Executors.newFixedThreadPool(getNumThreads(numSlots), new ThreadFactory() {
+      @Override
+      public Thread newThread(Runnable r) {
+	Thread result = new Thread(r, "jsat-" + m_ThreadCount.incrementAndGet());
+	result.setDaemon(true);
+	return result;
+      }
+    });
+  }
+
+  /**
+   * Turns the JSAT prediction into a class distribution.
+   *
+   * @param dist	the JSAT prediction
+   * @return		the class distribution
+   */
+  public static double[] toDistribution(CategoricalResults dist) {
+    double[]	result;
+    int		i;
+
+    result = new double[dist.size()];
+    for (i = 0; i < dist.size(); i++)
+      result[i] = dist.getProb(i);
+
+    return result;
+  }
+
+  /**
+   * Returns the underlying exception of a failed job.
+   *
+   * @param e		the exception of the job
+   * @return		the cause, if an exception, otherwise the exception itself
+   */
+  public static Exception unwrap(ExecutionException e) {
+    if (e.getCause() instanceof Exception)
+      return (Exception) e.getCause();
+    else
+      return e;
+  }
+}
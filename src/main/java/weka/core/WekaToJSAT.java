@@ -23,15 +23,44 @@ package weka.core;
 import jsat.DataSet;
 import jsat.SimpleDataSet;
 import jsat.classifiers.CategoricalData;
+import jsat.classifiers.ClassificationDataSet;
 import jsat.classifiers.DataPoint;
 import jsat.linear.DenseVector;
+import jsat.linear.SparseVector;
 import jsat.linear.Vec;
+import jsat.regression.RegressionDataSet;
 
-import java.util.ArrayList;
-import java.util.List;
+import java.util.Arrays;
+import java.util.Map;
 
 /**
  * Converts from Weka to JSAT.
+ * <br>
+ * By default, the numeric values of each row get copied into a new vector.
+ * With views enabled (see {@link #setUseViews(boolean)}), the rows of the
+ * generated dataset wrap the value arrays of the Weka instances instead, if
+ * the numeric attributes (excluding the class) form a contiguous block. Otherwise,
+ * all numeric values get stored in a single shared array, with the rows being
+ * views on their section of it.
+ * <br>
+ * The attribute indices are precompiled into primitive arrays when
+ * initializing the conversion. For predictions, {@link #convertRowBuffered(Instance)}
+ * converts rows into a thread-local buffer without allocating any objects.
+ * <br>
+ * Once initialized, the conversion plan doesn't change until the next call of
+ * {@link #initialize(Instances)}, i.e., {@link #convertRow(Instance)} and
+ * {@link #convertRowBuffered(Instance)} can be called concurrently from
+ * multiple threads without locking. {@link #convertRowBuffered(Instance)}
+ * doesn't even require the converter to be shared safely between threads:
+ * the plan gets published via the volatile buffer field, which gets written
+ * last when initializing and read first when converting into the buffer.
+ * <br>
+ * {@link SparseInstance} rows get turned into {@link SparseVector} objects,
+ * only iterating over their non-zero values.
+ * <br>
+ * Rows with a missing class value can be skipped while converting the
+ * dataset (see {@link #setSkipMissingClass(boolean)}), which avoids having
+ * to copy the Weka data and calling {@link Instances#deleteWithMissingClass()}.
  *
  * @author FracPete (fracpete at waikato dot ac dot nz)
  * @version $Revision$
@@ -40,10 +69,10 @@ public class WekaToJSAT
   extends AbstractJSATConversion<Instances, DataSet, Instance, DataPoint> {
 
   /** the indices of the numeric attributes in the Instances object. */
-  protected List<Integer> m_Numeric;
+  protected int[] m_Numeric;
 
   /** the indices of the categorical attributes in the Instances object. */
-  protected List<Integer> m_Categorical;
+  protected int[] m_Categorical;
 
   /** the index of the numeric class (-1 if not numeric. */
   protected int m_NumClass;
@@ -51,9 +80,112 @@ public class WekaToJSAT
   /** the index of the categorical class (-1 if not categorical). */
   protected int m_CatClass;
 
+  /** the index of the class attribute in the Instances object (-1 if none). */
+  protected int m_ClassIndex;
+
   /** the categorical data. */
   protected CategoricalData[] m_CategoricalData;
 
+  /** the indices of the numeric input attributes (ie without class). */
+  protected int[] m_NumericInput;
+
+  /** the indices of the categorical input attributes (ie without class). */
+  protected int[] m_CategoricalInput;
+
+  /** the categorical data of the input attributes (ie without class). */
+  protected CategoricalData[] m_CategoricalInputData;
+
+  /** the position of each attribute among the numeric input attributes
+   * (-1 if not a numeric input attribute). */
+  protected int[] m_NumericInputPos;
+
+  /** the attribute index where the contiguous block of numeric input
+   * attributes starts (-1 if not contiguous). */
+  protected int m_NumericStart;
+
+  /** whether to use views on the Weka data rather than copies. */
+  protected boolean m_UseViews;
+
+  /** whether to skip rows with missing class value. */
+  protected boolean m_SkipMissingClass;
+
+  /** the thread-local buffers for converting rows (dense, sparse). */
+  protected transient volatile ThreadLocal<DataPoint[]> m_Buffer;
+
+  /** the cache for converted rows (null if not caching). */
+  protected transient JSATConversionCache m_Cache;
+
+  /**
+   * Sets whether to wrap the Weka data rather than copying it.
+   * NB: with views, the generated rows share their numeric values with
+   * the Weka instances, i.e., modifying one modifies the other.
+   *
+   * @param value	true if to use views
+   */
+  public void setUseViews(boolean value) {
+    m_UseViews = value;
+  }
+
+  /**
+   * Returns whether to wrap the Weka data rather than copying it.
+   *
+   * @return		true if to use views
+   */
+  public boolean getUseViews() {
+    return m_UseViews;
+  }
+
+  /**
+   * Sets whether to skip rows with a missing class value when converting
+   * datasets.
+   *
+   * @param value	true if to skip
+   */
+  public void setSkipMissingClass(boolean value) {
+    m_SkipMissingClass = value;
+  }
+
+  /**
+   * Returns whether to skip rows with a missing class value when converting
+   * datasets.
+   *
+   * @return		true if to skip
+   */
+  public boolean getSkipMissingClass() {
+    return m_SkipMissingClass;
+  }
+
+  /**
+   * Sets the cache for converted rows, which gets used by
+   * {@link #convertDataset(Instances)}. The cache is not used in
+   * conjunction with views, as views don't copy any data.
+   *
+   * @param value	the cache, null to turn off caching
+   */
+  public void setCache(JSATConversionCache value) {
+    m_Cache = value;
+  }
+
+  /**
+   * Returns the cache for converted rows.
+   *
+   * @return		the cache, null if not caching
+   */
+  public JSATConversionCache getCache() {
+    return m_Cache;
+  }
+
+  /**
+   * Returns whether the row gets skipped when converting datasets.
+   *
+   * @param inst	the row to check
+   * @return		true if to skip
+   * @see		#setSkipMissingClass(boolean)
+   */
+  protected boolean skip(Instance inst) {
+    return m_SkipMissingClass && (m_ClassIndex > -1) && Utils.isMissingValue(inst.value(m_ClassIndex));
+  }
+
   /**
    * Initializes the conversion.
    *
@@ -63,81 +195,338 @@ public class WekaToJSAT
   public void initialize(Instances dataset) {
     int			i;
     int			n;
+    int			numNumeric;
+    int			numCategorical;
+    int			v;
     Attribute		att;
 
     // determine indices
-    m_Numeric = new ArrayList<>();
-    m_Categorical = new ArrayList<>();
-    m_NumClass = -1;
-    m_CatClass = -1;
+    m_Numeric      = new int[dataset.numAttributes()];
+    m_Categorical  = new int[dataset.numAttributes()];
+    numNumeric     = 0;
+    numCategorical = 0;
+    m_NumClass     = -1;
+    m_CatClass     = -1;
+    m_ClassIndex   = dataset.classIndex();
     for (i = 0; i < dataset.numAttributes(); i++) {
       if (dataset.attribute(i).isNumeric()) {
-	m_Numeric.add(i);
-	if (i == dataset.classIndex())
-	  m_NumClass = m_Numeric.size() - 1;
+	if (i == m_ClassIndex)
+	  m_NumClass = numNumeric;
+	m_Numeric[numNumeric] = i;
+	numNumeric++;
       }
       else if (dataset.attribute(i).isNominal()) {
-	m_Categorical.add(i);
-	if (i == dataset.classIndex())
-	  m_CatClass = m_Categorical.size() - 1;
+	if (i == m_ClassIndex)
+	  m_CatClass = numCategorical;
+	m_Categorical[numCategorical] = i;
+	numCategorical++;
+      }
+    }
+    m_Numeric     = Arrays.copyOf(m_Numeric, numNumeric);
+    m_Categorical = Arrays.copyOf(m_Categorical, numCategorical);
+
+    // input attributes
+    m_NumericInput = new int[numNumeric - (m_NumClass > -1 ? 1 : 0)];
+    n              = 0;
+    for (i = 0; i < numNumeric; i++) {
+      if (i == m_NumClass)
+	continue;
+      m_NumericInput[n] = m_Numeric[i];
+      n++;
+    }
+    m_NumericInputPos = new int[dataset.numAttributes()];
+    Arrays.fill(m_NumericInputPos, -1);
+    for (i = 0; i < m_NumericInput.length; i++)
+      m_NumericInputPos[m_NumericInput[i]] = i;
+    m_CategoricalInput = new int[numCategorical - (m_CatClass > -1 ? 1 : 0)];
+    n                  = 0;
+    for (i = 0; i < numCategorical; i++) {
+      if (i == m_CatClass)
+	continue;
+      m_CategoricalInput[n] = m_Categorical[i];
+      n++;
+    }
+
+    // contiguous block of numeric input attributes?
+    m_NumericStart = (m_NumericInput.length > 0) ? m_NumericInput[0] : -1;
+    for (i = 1; i < m_NumericInput.length; i++) {
+      if (m_NumericInput[i] != m_NumericInput[i - 1] + 1) {
+	m_NumericStart = -1;
+	break;
       }
     }
 
     // assemble categorical data structures
-    m_CategoricalData = new CategoricalData[m_Categorical.size()];
-    for (i = 0; i < m_Categorical.size(); i++) {
-      att     = dataset.attribute(m_Categorical.get(i));
+    m_CategoricalData      = new CategoricalData[numCategorical];
+    m_CategoricalInputData = new CategoricalData[m_CategoricalInput.length];
+    n                      = 0;
+    for (i = 0; i < numCategorical; i++) {
+      att = dataset.attribute(m_Categorical[i]);
       m_CategoricalData[i] = new CategoricalData(att.numValues());
       m_CategoricalData[i].setCategoryName(att.name());
-      for (n = 0; n < att.numValues(); n++)
-	m_CategoricalData[i].setOptionName(att.value(n), n);
+      for (v = 0; v < att.numValues(); v++)
+	m_CategoricalData[i].setOptionName(att.value(v), v);
+      if (i != m_CatClass) {
+	m_CategoricalInputData[n] = m_CategoricalData[i];
+	n++;
+      }
     }
+
+    // publishes the plan, must be the last statement
+    m_Buffer = newBuffer();
+  }
+
+  /**
+   * Creates a new thread-local buffer for the current conversion plan.
+   *
+   * @return		the buffer
+   */
+  protected ThreadLocal<DataPoint[]> newBuffer() {
+    final int			numNumeric;
+    final int			numCategorical;
+    final CategoricalData[]	categories;
+
+    numNumeric     = m_NumericInput.length;
+    numCategorical = m_CategoricalInput.length;
+    categories     = m_CategoricalInputData;
+
+    return new ThreadLocal<DataPoint[]>() {
+      @Override
+      protected DataPoint[] initialValue() {
+	return new DataPoint[]{
+	  new DataPoint(new DenseVector(numNumeric), new int[numCategorical], categories, 1.0),
+	  new DataPoint(new SparseVector(numNumeric), new int[numCategorical], categories, 1.0),
+	};
+      }
+    };
+  }
+
+  /**
+   * Returns the number of numeric input attributes, i.e., without the class
+   * attribute.
+   *
+   * @return		the number of attributes
+   */
+  public int getNumNumericInputs() {
+    return m_NumericInput.length;
+  }
+
+  /**
+   * Returns the categorical data of the input attributes, i.e., without
+   * the class attribute.
+   *
+   * @return		the categorical data
+   */
+  public CategoricalData[] getInputCategoricalData() {
+    return m_CategoricalInputData;
+  }
+
+  /**
+   * Returns the categorical data of the class attribute.
+   *
+   * @return		the categorical data, null if no nominal class
+   */
+  public CategoricalData getClassCategoricalData() {
+    if (m_CatClass > -1)
+      return m_CategoricalData[m_CatClass];
+    else
+      return null;
+  }
+
+  /**
+   * Creates a new, empty dataset: regression dataset if numeric class,
+   * classification dataset if nominal class, otherwise a simple dataset.
+   *
+   * @param dataset	the Weka dataset to get the attribute names from
+   * @param categories	the categorical data of the input attributes
+   * @return		the empty dataset
+   */
+  protected DataSet newDataset(Instances dataset, CategoricalData[] categories) {
+    DataSet	result;
+    int		i;
+
+    if (m_NumClass > -1)
+      result = new RegressionDataSet(m_NumericInput.length, categories);
+    else if (m_CatClass > -1)
+      result = new ClassificationDataSet(m_NumericInput.length, categories, m_CategoricalData[m_CatClass]);
+    else
+      result = new SimpleDataSet(categories, m_NumericInput.length);
+
+    for (i = 0; i < m_NumericInput.length; i++)
+      result.setNumericName(dataset.attribute(m_NumericInput[i]).name(), i);
+
+    return result;
+  }
+
+  /**
+   * Adds the row to the dataset, using the class value of the instance
+   * as target value (if any).
+   *
+   * @param dataset	the dataset to add to
+   * @param point	the row to add
+   * @param inst	the Weka instance the row was generated from
+   */
+  protected void addRow(DataSet dataset, DataPoint point, Instance inst) {
+    if (m_NumClass > -1)
+      ((RegressionDataSet) dataset).addDataPoint(point, inst.value(m_ClassIndex));
+    else if (m_CatClass > -1)
+      ((ClassificationDataSet) dataset).addDataPoint(point, (int) inst.value(m_ClassIndex));
+    else
+      ((SimpleDataSet) dataset).add(point);
+  }
+
+  /**
+   * Generates the vector with the numeric values of the instance
+   * (skips the class value). Sparse instances result in sparse vectors.
+   *
+   * @param inst	the instance to get the values from
+   * @param store	the shared storage to use, null for a copy
+   * @param offset	the offset in the storage
+   * @return		the vector
+   */
+  protected Vec numericVector(Instance inst, double[] store, int offset) {
+    Vec		result;
+    int		n;
+    int		pos;
+
+    // only non-zero values
+    if (inst instanceof SparseInstance) {
+      result = new SparseVector(m_NumericInput.length, inst.numValues());
+      for (n = 0; n < inst.numValues(); n++) {
+	pos = m_NumericInputPos[inst.index(n)];
+	if (pos > -1)
+	  result.set(pos, inst.valueSparse(n));
+      }
+      return result;
+    }
+
+    // view on the Weka values
+    if (m_UseViews && (m_NumericStart > -1) && (inst instanceof DenseInstance))
+      return new DenseVector(((DenseInstance) inst).m_AttValues, m_NumericStart, m_NumericStart + m_NumericInput.length);
+
+    if (store == null)
+      result = new DenseVector(m_NumericInput.length);
+    else
+      result = new DenseVector(store, offset, offset + m_NumericInput.length);
+    for (n = 0; n < m_NumericInput.length; n++)
+      result.set(n, inst.value(m_NumericInput[n]));
+
+    return result;
+  }
+
+  /**
+   * Generates the array with the categorical values of the instance
+   * (skips the class value).
+   *
+   * @param inst	the instance to get the values from
+   * @return		the categorical values
+   */
+  protected int[] categoricalValues(Instance inst) {
+    int[]	result;
+    int		n;
+
+    result = new int[m_CategoricalInput.length];
+    for (n = 0; n < m_CategoricalInput.length; n++)
+      result[n] = (int) inst.value(m_CategoricalInput[n]);
+
+    return result;
   }
 
   /**
    * Converts the dataset.
+   * The rows get added directly to the dataset of the appropriate type,
+   * rather than converting a {@link SimpleDataSet} (which copies all rows
+   * once more). When using a cache, only rows that haven't been converted
+   * before get converted and the dataset contains shallow copies of the
+   * cached rows (sharing the values, with their own weight), i.e., the JSAT
+   * algorithm may change the weights, but must not modify the values.
    *
    * @param dataset	the dataset to convert
    * @return		the converted dataset
    * @see		#initialize(Object)
+   * @see		#setUseViews(boolean)
+   * @see		#setSkipMissingClass(boolean)
+   * @see		#setParallel(boolean)
+   * @see		#setCache(JSATConversionCache)
    */
   @Override
-  public DataSet convertDataset(Instances dataset) {
-    DataSet		result;
-    int			i;
-    int			n;
-    Instance		inst;
-    Vec 		num;
-    List<DataPoint> 	list;
-    int[]		cat;
-    SimpleDataSet 	simple;
+  public DataSet convertDataset(final Instances dataset) {
+    DataSet			result;
+    int				i;
+    int				numRows;
+    int				numMissing;
+    Instance			inst;
+    DataPoint			point;
+    Map<Object, DataPoint>	cached;
+    final int			numNumeric;
+    final int[]			rows;
+    final int[]			missing;
+    final DataPoint[]		points;
+    final double[]		store;
+    final CategoricalData[]	categories;
 
-    // data
-    list = new ArrayList<>();
+    categories = getInputCategoricalData();
+    result     = newDataset(dataset, categories);
+    numNumeric = m_NumericInput.length;
+
+    // rows to convert
+    rows    = new int[dataset.numInstances()];
+    numRows = 0;
     for (i = 0; i < dataset.numInstances(); i++) {
-      inst = dataset.instance(i);
-      // numeric data
-      num = new DenseVector(m_Numeric.size());
-      for (n = 0; n < m_Numeric.size(); n++)
-	num.set(n, inst.value(m_Numeric.get(n)));
-      // categorical
-      cat = new int[m_Categorical.size()];
-      for (n = 0; n < m_Categorical.size(); n++)
-	cat[n] = (int) inst.value(m_Categorical.get(n));
-      // create row
-      list.add(new DataPoint(num, cat, m_CategoricalData, inst.weight()));
+      if (!skip(dataset.instance(i))) {
+	rows[numRows] = i;
+	numRows++;
+      }
     }
 
-    // dataset
-    simple = new SimpleDataSet(list);
-    for (i = 0; i < m_Numeric.size(); i++)
-      simple.setNumericName(dataset.attribute(m_Numeric.get(i)).name(), i);
-    if (m_NumClass > -1)
-      result = simple.asRegressionDataSet(m_NumClass);
-    else if (m_CatClass > -1)
-      result = simple.asClassificationDataSet(m_CatClass);
+    // previously converted rows
+    points     = new DataPoint[numRows];
+    missing    = new int[numRows];
+    numMissing = 0;
+    cached     = null;
+    if ((m_Cache != null) && !m_UseViews)
+      cached = m_Cache.getRows(dataset);
+    for (i = 0; i < numRows; i++) {
+      if (cached != null) {
+	inst  = dataset.instance(rows[i]);
+	point = cached.get(JSATConversionCache.getKey(inst));
+	if (point != null)
+	  points[i] = new DataPoint(point.getNumericalValues(), point.getCategoricalValues(), categories, inst.weight());
+      }
+      if (points[i] == null) {
+	missing[numMissing] = i;
+	numMissing++;
+      }
+    }
+
+    // shared storage for numeric values? (not for sparse data)
+    if (m_UseViews && (m_NumericStart == -1) && (numNumeric > 0)
+      && !((dataset.numInstances() > 0) && (dataset.instance(0) instanceof SparseInstance)))
+      store = new double[numMissing * numNumeric];
     else
-      result = simple;
+      store = null;
+
+    // data
+    processRows(numMissing, new RowRangeProcessor() {
+      @Override
+      public void process(int from, int to) {
+	Instance inst;
+	for (int n = from; n < to; n++) {
+	  inst               = dataset.instance(rows[missing[n]]);
+	  points[missing[n]] = new DataPoint(
+	    numericVector(inst, store, n * numNumeric), categoricalValues(inst), categories, inst.weight());
+	}
+      }
+    });
+    if (cached != null) {
+      for (i = 0; i < numMissing; i++) {
+	point = points[missing[i]];
+	cached.put(JSATConversionCache.getKey(dataset.instance(rows[missing[i]])), point);
+	points[missing[i]] = new DataPoint(point.getNumericalValues(), point.getCategoricalValues(), categories, point.getWeight());
+      }
+    }
+    for (i = 0; i < numRows; i++)
+      addRow(result, points[i], dataset.instance(rows[i]));
 
     return result;
   }
@@ -152,31 +541,67 @@ public class WekaToJSAT
    */
   @Override
   public DataPoint convertRow(Instance row) {
+    return new DataPoint(numericVector(row, null, 0), categoricalValues(row), m_CategoricalInputData, row.weight());
+  }
+
+  /**
+   * Returns the target value of the row, i.e., the value of the class
+   * attribute (which {@link #convertRow(Instance)} skips).
+   *
+   * @param row		the row to get the target value from
+   * @return		the target value, missing value if no class attribute
+   */
+  public double getTargetValue(Instance row) {
+    if (m_ClassIndex > -1)
+      return row.value(m_ClassIndex);
+    else
+      return Utils.missingValue();
+  }
+
+  /**
+   * Converts the data row into the buffer of the current thread, without
+   * allocating any objects. The returned row gets overwritten by the next
+   * call from the same thread, i.e., it must not be stored. Its weight
+   * is not updated.
+   * NB: skips the class value.
+   *
+   * @param row		the row to convert
+   * @return		the converted row
+   * @see		#initialize(Object)
+   */
+  public DataPoint convertRowBuffered(Instance row) {
     DataPoint		result;
-    int			n;
-    int			i;
-    Vec 		num;
+    Vec			num;
     int[]		cat;
+    int			n;
+    int			pos;
 
-    // numeric data
-    num = new DenseVector(m_Numeric.size() - (m_NumClass > -1 ? 1 : 0));
-    i   = 0;
-    for (n = 0; n < m_Numeric.size(); n++) {
-      if (m_NumClass == n)
-	continue;
-      num.set(i, row.value(m_Numeric.get(n)));
-      i++;
+    if (m_Buffer == null) {
+      synchronized (this) {
+	if (m_Buffer == null)
+	  m_Buffer = newBuffer();
+      }
     }
-    // categorical
-    cat = new int[m_Categorical.size() - (m_CatClass > -1 ? 1 : 0)];
-    i   = 0;
-    for (n = 0; n < m_Categorical.size(); n++) {
-      if (m_CatClass == n)
-	continue;
-      cat[i] = (int) row.value(m_Categorical.get(n));
+
+    if (row instanceof SparseInstance) {
+      result = m_Buffer.get()[1];
+      num    = result.getNumericalValues();
+      num.zeroOut();
+      for (n = 0; n < row.numValues(); n++) {
+	pos = m_NumericInputPos[row.index(n)];
+	if (pos > -1)
+	  num.set(pos, row.valueSparse(n));
+      }
+    }
+    else {
+      result = m_Buffer.get()[0];
+      num    = result.getNumericalValues();
+      for (n = 0; n < m_NumericInput.length; n++)
+	num.set(n, row.value(m_NumericInput[n]));
     }
-    // create row
-    result = new DataPoint(num, cat, m_CategoricalData, row.weight());
+    cat = result.getCategoricalValues();
+    for (n = 0; n < m_CategoricalInput.length; n++)
+      cat[n] = (int) row.value(m_CategoricalInput[n]);
 
     return result;
   }
@@ -0,0 +1,349 @@
+/*
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/**
+ * JSATFilter.java
+ * Copyright (C) 2017 University of Waikato, Hamilton, NZ
+ */
+
+package weka.filters;
+
+import jsat.DataSet;
+import jsat.SimpleDataSet;
+import jsat.classifiers.CategoricalData;
+import jsat.classifiers.ClassificationDataSet;
+import jsat.classifiers.DataPoint;
+import jsat.datatransform.DataTransform;
+import jsat.datatransform.PCA;
+import jsat.regression.RegressionDataSet;
+import weka.core.Capabilities;
+import weka.core.Capabilities.Capability;
+import weka.core.Instance;
+import weka.core.Instances;
+import weka.core.JSATOptionProcessor;
+import weka.core.JSATToWeka;
+import weka.core.Option;
+import weka.core.Utils;
+import weka.core.WekaToJSAT;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.List;
+import java.util.Vector;
+
+/**
+ <!-- globalinfo-start -->
+ <!-- globalinfo-end -->
+ *
+ <!-- options-start -->
+ <!-- options-end -->
+ *
+ * @author FracPete (fracpete at waikato dot ac dot nz)
+ * @version $Revision$
+ */
+public class JSATFilter
+  extends Filter {
+
+  private static final long serialVersionUID = 3527604941436389517L;
+
+  public final static String TRANSFORM = "transform";
+
+  /** the jsat transform to use (template). */
+  protected DataTransform m_Transform = getDefaultTransform();
+
+  /** the fitted transform. */
+  protected DataTransform m_ActualTransform;
+
+  /** for converting Weka data. */
+  protected WekaToJSAT m_WekaToJSAT = new WekaToJSAT();
+
+  /** for converting JSAT data. */
+  protected JSATToWeka m_JSATToWeka = new JSATToWeka();
+
+  /**
+   * Returns a string describing filter
+   *
+   * @return a description suitable for displaying in the explorer/experimenter
+   *         gui
+   */
+  public String globalInfo() {
+    return "Wrapper around a JSAT data transformation.\n"
+      + "The transformation gets fitted on the first batch of data; afterwards, "
+      + "instances are transformed one by one as they arrive.";
+  }
+
+  /**
+   * Returns an enumeration describing the available options.
+   *
+   * @return an enumeration of all the available options.
+   */
+  @Override
+  public Enumeration listOptions() {
+    Vector result = new Vector();
+
+    result.addElement(new Option(
+      "\tThe JSAT transformation to use.\n"
+	+ "\t(default: " + getDefaultTransform().getClass().getName() + ")",
+      TRANSFORM, 1, "-" + TRANSFORM + " <classname + options>"));
+
+    result.addAll(Collections.list(super.listOptions()));
+
+    return result.elements();
+  }
+
+  /**
+   * Sets the options.
+   *
+   * @param options	the options
+   * @throws Exception	if setting fails
+   */
+  @Override
+  public void setOptions(String[] options) throws Exception {
+    JSATOptionProcessor proc = JSATOptionProcessor.getSingleton();
+    String tmpStr = Utils.getOption(TRANSFORM, options);
+    if (tmpStr.isEmpty())
+      setTransform(getDefaultTransform());
+    else
+      setTransform((DataTransform) proc.fromCommandline(tmpStr));
+    super.setOptions(options);
+  }
+
+  /**
+   * Returns the options.
+   *
+   * @return		the options
+   */
+  @Override
+  public String[] getOptions() {
+    List<String> result = new ArrayList<>();
+    JSATOptionProcessor proc = JSATOptionProcessor.getSingleton();
+
+    try {
+      result.add("-" + TRANSFORM);
+      result.add(proc.toCommandline(getTransform()));
+    }
+    catch (Exception e) {
+      System.err.println("Failed to retrieve commandline for transform: " + e);
+      e.printStackTrace();
+    }
+
+    Collections.addAll(result, super.getOptions());
+
+    return result.toArray(new String[result.size()]);
+  }
+
+  /**
+   * Returns the default transformation.
+   *
+   * @return		the default
+   */
+  protected DataTransform getDefaultTransform() {
+    return new PCA();
+  }
+
+  /**
+   * Sets the transformation.
+   *
+   * @param value	the transformation
+   */
+  public void setTransform(DataTransform value) {
+    m_Transform = value;
+  }
+
+  /**
+   * Returns the transformation.
+   *
+   * @return		the transformation
+   */
+  public DataTransform getTransform() {
+    return m_Transform;
+  }
+
+  /**
+   * Returns the tip text for this property
+   *
+   * @return tip text for this property suitable for displaying in the
+   *         explorer/experimenter gui
+   */
+  public String transformTipText() {
+    return "The JSAT transformation to use.";
+  }
+
+  /**
+   * Returns the Capabilities of this filter.
+   *
+   * @return the capabilities of this object
+   * @see Capabilities
+   */
+  @Override
+  public Capabilities getCapabilities() {
+    Capabilities	result;
+
+    result = super.getCapabilities();
+    result.disableAll();
+    result.enable(Capability.NUMERIC_ATTRIBUTES);
+    result.enable(Capability.NOMINAL_ATTRIBUTES);
+    result.enable(Capability.MISSING_VALUES);
+    result.enable(Capability.NUMERIC_CLASS);
+    result.enable(Capability.NOMINAL_CLASS);
+    result.enable(Capability.MISSING_CLASS_VALUES);
+    result.enable(Capability.NO_CLASS);
+
+    return result;
+  }
+
+  /**
+   * Sets the format of the input instances. The output format can only be
+   * determined after fitting the transformation on the first batch.
+   *
+   * @param instanceInfo	the structure of the input data
+   * @return			false, as output format not yet known
+   * @throws Exception		if the input format can't be set
+   */
+  @Override
+  public boolean setInputFormat(Instances instanceInfo) throws Exception {
+    super.setInputFormat(instanceInfo);
+
+    m_WekaToJSAT.setSkipMissingClass(true);
+    m_WekaToJSAT.initialize(instanceInfo);
+    m_ActualTransform = null;
+
+    return false;
+  }
+
+  /**
+   * Fits the transformation on the data and determines the output format.
+   *
+   * @param data	the data to fit the transformation on
+   * @throws Exception	if fitting fails
+   */
+  protected void fit(Instances data) throws Exception {
+    DataSet		dataset;
+    DataSet		header;
+    DataPoint		point;
+    CategoricalData[]	categories;
+    int			numNumeric;
+    Instances		outputFormat;
+
+    // fit (rows with missing class get skipped)
+    dataset = m_WekaToJSAT.convertDataset(data);
+    if (dataset.getSampleSize() == 0)
+      throw new IllegalStateException("No data to fit the JSAT transformation on!");
+    m_ActualTransform = m_Transform.clone();
+    m_ActualTransform.fit(dataset);
+
+    // output structure
+    point      = m_ActualTransform.transform(dataset.getDataPoint(0));
+    numNumeric = point.getNumericalValues().length();
+    categories = point.getCategoricalData();
+    if (dataset instanceof ClassificationDataSet)
+      header = new ClassificationDataSet(numNumeric, categories, ((ClassificationDataSet) dataset).getPredicting());
+    else if (dataset instanceof RegressionDataSet)
+      header = new RegressionDataSet(numNumeric, categories);
+    else
+      header = new SimpleDataSet(categories, numNumeric);
+    m_JSATToWeka.initialize(header);
+    outputFormat = m_JSATToWeka.convertDataset(header);
+    outputFormat.setRelationName(data.relationName());
+    if (data.classIndex() > -1) {
+      outputFormat.renameAttribute(outputFormat.numAttributes() - 1, data.classAttribute().name());
+      outputFormat.setClassIndex(outputFormat.numAttributes() - 1);
+    }
+    setOutputFormat(outputFormat);
+  }
+
+  /**
+   * Transforms the instance.
+   *
+   * @param instance	the instance to transform
+   * @return		the transformed instance
+   */
+  protected Instance transform(Instance instance) {
+    Instance	result;
+
+    result = m_JSATToWeka.convertRow(m_ActualTransform.transform(m_WekaToJSAT.convertRow(instance)));
+    if (outputFormatPeek().classIndex() > -1)
+      result.setValue(outputFormatPeek().classIndex(), m_WekaToJSAT.getTargetValue(instance));
+
+    return result;
+  }
+
+  /**
+   * Inputs an instance for filtering. Instances of the first batch get
+   * buffered until the transformation is fitted, afterwards they get
+   * transformed immediately.
+   *
+   * @param instance	the input instance
+   * @return		true if the filtered instance may now be collected with output()
+   * @throws Exception	if the instance can't be transformed
+   */
+  @Override
+  public boolean input(Instance instance) throws Exception {
+    if (getInputFormat() == null)
+      throw new IllegalStateException("No input instance format defined");
+    if (m_NewBatch) {
+      resetQueue();
+      m_NewBatch = false;
+    }
+
+    if (m_ActualTransform == null) {
+      bufferInput(instance);
+      return false;
+    }
+
+    push(transform(instance));
+    return true;
+  }
+
+  /**
+   * Signifies that this batch of input to the filter is finished. Fits the
+   * transformation on the first batch and outputs the transformed
+   * instances.
+   *
+   * @return		true if there are instances pending output
+   * @throws Exception	if fitting or transforming fails
+   */
+  @Override
+  public boolean batchFinished() throws Exception {
+    Instances	data;
+    int		i;
+
+    if (getInputFormat() == null)
+      throw new IllegalStateException("No input instance format defined");
+
+    if (m_ActualTransform == null) {
+      data = getInputFormat();
+      fit(data);
+      for (i = 0; i < data.numInstances(); i++)
+	push(transform(data.instance(i)));
+    }
+
+    flushInput();
+    m_NewBatch       = true;
+    m_FirstBatchDone = true;
+
+    return (numPendingOutput() != 0);
+  }
+
+  /**
+   * Runs the filter from the command-line.
+   *
+   * @param args	the command-line options
+   */
+  public static void main(String[] args) {
+    runFilter(new JSATFilter(), args);
+  }
+}
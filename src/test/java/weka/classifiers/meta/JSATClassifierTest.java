@@ -0,0 +1,236 @@
+/*
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/**
+ * JSATClassifierTest.java
+ * Copyright (C) 2017 University of Waikato, Hamilton, NZ
+ */
+
+package weka.classifiers.meta;
+
+import junit.framework.Test;
+import junit.framework.TestSuite;
+import junit.textui.TestRunner;
+import weka.classifiers.AbstractClassifier;
+import weka.classifiers.Classifier;
+import weka.classifiers.Evaluation;
+import weka.core.Instances;
+import weka.core.TestCaseWithIO;
+import weka.core.converters.ConverterUtils.DataSource;
+import weka.filters.Filter;
+import weka.filters.unsupervised.instance.NonSparseToSparse;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Tests {@link JSATClassifier}.
+ *
+ * @author FracPete (fracpete at waikato dot ac dot nz)
+ * @version $Revision$
+ */
+public class JSATClassifierTest
+  extends TestCaseWithIO {
+
+  /** the number of threads for the stress test. */
+  public final static int NUM_THREADS = 16;
+
+  /** the number of passes over the data per thread. */
+  public final static int NUM_PASSES = 20;
+
+  /**
+   * Predicts the data from multiple threads simultaneously, each thread
+   * starting at a different row, and compares the predictions with
+   * the single-threaded ones.
+   *
+   * @param classifier	the trained classifier
+   * @param data	the data to predict
+   * @throws Exception	if prediction fails
+   */
+  public static void checkConcurrentPredictions(final Classifier classifier, final Instances data) throws Exception {
+    final double[][]	expected;
+    ExecutorService	executor;
+    List<Future<String>>	jobs;
+    String		error;
+    int			i;
+
+    expected = new double[data.numInstances()][];
+    for (i = 0; i < data.numInstances(); i++)
+      expected[i] = classifier.distributionForInstance(data.instance(i));
+
+    executor = Executors.newFixedThreadPool(NUM_THREADS);
+    try {
+      jobs = new ArrayList<>();
+      for (i = 0; i < NUM_THREADS; i++) {
+	final int offset = i * data.numInstances() / NUM_THREADS;
+	jobs.add(executor.submit(new Callable<String>() {
+	  @Override
+	  public String call() throws Exception {
+	    int row;
+	    for (int n = 0; n < NUM_PASSES * data.numInstances(); n++) {
+	      row = (offset + n) % data.numInstances();
+	      if (!Arrays.equals(expected[row], classifier.distributionForInstance(data.instance(row))))
+		return "row " + row + " differs";
+	    }
+	    return null;
+	  }
+	}));
+      }
+      for (Future<String> job: jobs) {
+	error = job.get();
+	assertNull(error, error);
+      }
+    }
+    finally {
+      executor.shutdownNow();
+    }
+  }
+
+  /**
+   * Predicts the data as batch, in chunks smaller than the data and using
+   * multiple execution slots, and compares the predictions with the ones
+   * of the individual rows.
+   *
+   * @param classifier	the trained classifier, with batch size and slots set
+   * @param data	the data to predict
+   * @throws Exception	if prediction fails
+   */
+  public static void checkBatchPredictions(Classifier classifier, Instances data) throws Exception {
+    double[][]	batch;
+    int		i;
+
+    assertTrue("batch size", Integer.parseInt(((AbstractClassifier) classifier).getBatchSize()) < data.numInstances());
+    batch = classifier.distributionsForInstances(data);
+    assertEquals("rows", data.numInstances(), batch.length);
+    for (i = 0; i < data.numInstances(); i++)
+      assertTrue("row " + i, Arrays.equals(classifier.distributionForInstance(data.instance(i)), batch[i]));
+  }
+
+  /**
+   * Tests predicting dense and sparse data as batch, in parallel chunks.
+   */
+  public void testBatchPredictions() throws Exception {
+    Instances		data;
+    Instances		sparse;
+    JSATClassifier	classifier;
+    NonSparseToSparse	filter;
+
+    data = DataSource.read(getInputStream("anneal.arff"));
+    data.setClassIndex(data.numAttributes() - 1);
+    classifier = new JSATClassifier();
+    classifier.setBatchSize("50");
+    classifier.setNumExecutionSlots(3);
+    classifier.buildClassifier(data);
+    checkBatchPredictions(classifier, data);
+
+    filter = new NonSparseToSparse();
+    filter.setInputFormat(data);
+    sparse = Filter.useFilter(data, filter);
+    classifier = new JSATClassifier();
+    classifier.setBatchSize("50");
+    classifier.setNumExecutionSlots(3);
+    classifier.buildClassifier(sparse);
+    checkBatchPredictions(classifier, sparse);
+  }
+
+  /**
+   * Tests predicting dense and sparse data from multiple threads.
+   */
+  public void testConcurrentPredictions() throws Exception {
+    Instances		data;
+    Instances		sparse;
+    JSATClassifier	classifier;
+    NonSparseToSparse	filter;
+
+    data = DataSource.read(getInputStream("anneal.arff"));
+    data.setClassIndex(data.numAttributes() - 1);
+    classifier = new JSATClassifier();
+    classifier.buildClassifier(data);
+    checkConcurrentPredictions(classifier, data);
+
+    filter = new NonSparseToSparse();
+    filter.setInputFormat(data);
+    sparse = Filter.useFilter(data, filter);
+    classifier = new JSATClassifier();
+    classifier.buildClassifier(sparse);
+    checkConcurrentPredictions(classifier, sparse);
+  }
+
+  /**
+   * Tests that training with multiple execution slots generates the same
+   * predictions as training with a single thread.
+   */
+  public void testParallelBuild() throws Exception {
+    Instances		data;
+    JSATClassifier	sequential;
+    JSATClassifier	parallel;
+    int			i;
+
+    data = DataSource.read(getInputStream("anneal.arff"));
+    data.setClassIndex(data.numAttributes() - 1);
+    sequential = new JSATClassifier();
+    sequential.setClassifier(new jsat.classifiers.trees.DecisionTree());
+    sequential.buildClassifier(data);
+    parallel = new JSATClassifier();
+    parallel.setClassifier(new jsat.classifiers.trees.DecisionTree());
+    parallel.setNumExecutionSlots(2);
+    parallel.buildClassifier(data);
+
+    for (i = 0; i < data.numInstances(); i++)
+      assertTrue("row " + i, Arrays.equals(
+	sequential.distributionForInstance(data.instance(i)), parallel.distributionForInstance(data.instance(i))));
+  }
+
+  /**
+   * Tests the native cross-validation against the Weka one, which uses the
+   * same folds.
+   */
+  public void testCrossValidate() throws Exception {
+    Instances		data;
+    JSATClassifier	classifier;
+    Evaluation		expected;
+    Evaluation		actual;
+
+    data = DataSource.read(getInputStream("anneal.arff"));
+    data.setClassIndex(data.numAttributes() - 1);
+    classifier = new JSATClassifier();
+    classifier.setClassifier(new jsat.classifiers.bayesian.NaiveBayes());
+
+    expected = new Evaluation(data);
+    expected.crossValidateModel(classifier, data, 10, new Random(1));
+    actual = classifier.crossValidate(data, 10, new Random(1));
+    assertEquals("instances", expected.numInstances(), actual.numInstances(), 1e-6);
+    assertEquals("correct", expected.pctCorrect(), actual.pctCorrect(), 1.0);
+
+    classifier.setNumExecutionSlots(2);
+    actual = classifier.crossValidate(data, 10, new Random(1));
+    assertEquals("instances (parallel)", expected.numInstances(), actual.numInstances(), 1e-6);
+    assertEquals("correct (parallel)", expected.pctCorrect(), actual.pctCorrect(), 1.0);
+  }
+
+  public static Test suite() {
+    return new TestSuite(JSATClassifierTest.class);
+  }
+
+  public static void main(String[] args){
+    TestRunner.run(suite());
+  }
+}
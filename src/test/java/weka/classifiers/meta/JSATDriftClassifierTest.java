@@ -0,0 +1,126 @@
+/*
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/**
+ * JSATDriftClassifierTest.java
+ * Copyright (C) 2017 University of Waikato, Hamilton, NZ
+ */
+
+package weka.classifiers.meta;
+
+import jsat.classifiers.Classifier;
+import junit.framework.Test;
+import junit.framework.TestSuite;
+import junit.textui.TestRunner;
+import weka.core.Attribute;
+import weka.core.DenseInstance;
+import weka.core.Instance;
+import weka.core.Instances;
+import weka.core.TestCaseWithIO;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Tests {@link JSATDriftClassifier}.
+ *
+ * @author FracPete (fracpete at waikato dot ac dot nz)
+ * @version $Revision$
+ */
+public class JSATDriftClassifierTest
+  extends TestCaseWithIO {
+
+  /** the number of rows per concept. */
+  public final static int NUM_ROWS = 2000;
+
+  /** the number of rows at the end of the stream to compute the accuracy on. */
+  public final static int NUM_RECENT = 500;
+
+  /**
+   * Generates a stream with a single numeric attribute x in [0,1), with
+   * class "a" for x &lt; 0.5 and "b" otherwise. After the specified number
+   * of rows, the concept changes and the class labels get swapped.
+   *
+   * @param numRows	the number of rows per concept
+   * @return		the stream
+   */
+  protected Instances generateStream(int numRows) {
+    Instances			result;
+    ArrayList<Attribute>	atts;
+    Random			rand;
+    Instance			inst;
+    double			x;
+    int				label;
+    int				i;
+
+    atts = new ArrayList<>();
+    atts.add(new Attribute("x"));
+    atts.add(new Attribute("class", Arrays.asList("a", "b")));
+    result = new Instances("drift", atts, 2 * numRows);
+    result.setClassIndex(1);
+    rand = new Random(1);
+    for (i = 0; i < 2 * numRows; i++) {
+      x     = rand.nextDouble();
+      label = (x < 0.5) ? 0 : 1;
+      if (i >= numRows)
+	label = 1 - label;
+      inst = new DenseInstance(1.0, new double[]{x, label});
+      result.add(inst);
+    }
+
+    return result;
+  }
+
+  /**
+   * Tests whether an injected concept change gets detected and the accuracy
+   * recovers afterwards, without touching the classifier property.
+   */
+  public void testConceptChange() throws Exception {
+    Instances		stream;
+    JSATDriftClassifier	drift;
+    Classifier		template;
+    Instance		inst;
+    int			correct;
+    int			i;
+
+    stream   = generateStream(NUM_ROWS);
+    drift    = new JSATDriftClassifier();
+    template = drift.getClassifier();
+    drift.buildClassifier(new Instances(stream, 0, 1));
+
+    // prequential: predict first, then update
+    correct = 0;
+    for (i = 1; i < stream.numInstances(); i++) {
+      inst = stream.instance(i);
+      if ((i >= stream.numInstances() - NUM_RECENT)
+	&& (drift.classifyInstance(inst) == inst.classValue()))
+	correct++;
+      drift.updateClassifier(inst);
+    }
+
+    assertTrue("drift detected", drift.getNumDrifts() > 0);
+    assertTrue("accuracy recovered: " + correct + "/" + NUM_RECENT, correct >= 0.9 * NUM_RECENT);
+    assertSame("classifier property", template, drift.getClassifier());
+  }
+
+  public static Test suite() {
+    return new TestSuite(JSATDriftClassifierTest.class);
+  }
+
+  public static void main(String[] args){
+    TestRunner.run(suite());
+  }
+}
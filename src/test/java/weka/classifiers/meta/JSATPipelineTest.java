@@ -0,0 +1,124 @@
+/*
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/**
+ * JSATPipelineTest.java
+ * Copyright (C) 2017 University of Waikato, Hamilton, NZ
+ */
+
+package weka.classifiers.meta;
+
+import jsat.datatransform.DataTransform;
+import jsat.datatransform.PCA;
+import jsat.datatransform.ZeroMeanTransform;
+import junit.framework.Test;
+import junit.framework.TestSuite;
+import junit.textui.TestRunner;
+import weka.core.Instances;
+import weka.core.TestCaseWithIO;
+import weka.core.Utils;
+import weka.core.converters.ConverterUtils.DataSource;
+
+/**
+ * Tests {@link JSATPipeline}.
+ *
+ * @author FracPete (fracpete at waikato dot ac dot nz)
+ * @version $Revision$
+ */
+public class JSATPipelineTest
+  extends TestCaseWithIO {
+
+  /**
+   * Returns a pipeline with two transformations.
+   *
+   * @return		the pipeline
+   */
+  protected JSATPipeline newPipeline() {
+    JSATPipeline	result;
+
+    result = new JSATPipeline();
+    result.setTransforms(new DataTransform[]{new ZeroMeanTransform(), new PCA()});
+
+    return result;
+  }
+
+  /**
+   * Tests training and predicting with a nominal class.
+   */
+  public void testClassification() throws Exception {
+    Instances		data;
+    JSATPipeline	pipeline;
+    double[]		dist;
+    int			i;
+
+    data = DataSource.read(getInputStream("anneal.arff"));
+    data.setClassIndex(data.numAttributes() - 1);
+    pipeline = newPipeline();
+    pipeline.buildClassifier(data);
+    for (i = 0; i < data.numInstances(); i++) {
+      dist = pipeline.distributionForInstance(data.instance(i));
+      assertEquals("row " + i, data.numClasses(), dist.length);
+      assertEquals("row " + i + " sum", 1.0, Utils.sum(dist), 1e-6);
+    }
+  }
+
+  /**
+   * Tests training and predicting with a numeric class.
+   */
+  public void testRegression() throws Exception {
+    Instances		data;
+    JSATPipeline	pipeline;
+    double[]		dist;
+    int			i;
+
+    data = DataSource.read(getInputStream("cpu.arff"));
+    data.setClassIndex(data.numAttributes() - 1);
+    pipeline = newPipeline();
+    pipeline.buildClassifier(data);
+    for (i = 0; i < data.numInstances(); i++) {
+      dist = pipeline.distributionForInstance(data.instance(i));
+      assertEquals("row " + i, 1, dist.length);
+      assertFalse("row " + i + " NaN", Double.isNaN(dist[0]));
+    }
+  }
+
+  /**
+   * Tests whether the options survive a round-trip.
+   */
+  public void testOptions() throws Exception {
+    JSATPipeline	pipeline;
+    JSATPipeline	restored;
+    String[]		options;
+
+    pipeline = newPipeline();
+    pipeline.setNumExecutionSlots(2);
+    options  = pipeline.getOptions();
+    restored = new JSATPipeline();
+    restored.setOptions(options.clone());
+    assertEquals("transforms", 2, restored.getTransforms().length);
+    assertEquals("transform 0", ZeroMeanTransform.class, restored.getTransforms()[0].getClass());
+    assertEquals("transform 1", PCA.class, restored.getTransforms()[1].getClass());
+    assertEquals("slots", 2, restored.getNumExecutionSlots());
+    assertEquals("options", Utils.joinOptions(options), Utils.joinOptions(restored.getOptions()));
+  }
+
+  public static Test suite() {
+    return new TestSuite(JSATPipelineTest.class);
+  }
+
+  public static void main(String[] args){
+    TestRunner.run(suite());
+  }
+}
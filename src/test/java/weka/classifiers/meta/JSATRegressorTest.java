@@ -0,0 +1,101 @@
+/*
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/**
+ * JSATRegressorTest.java
+ * Copyright (C) 2017 University of Waikato, Hamilton, NZ
+ */
+
+package weka.classifiers.meta;
+
+import junit.framework.Test;
+import junit.framework.TestSuite;
+import junit.textui.TestRunner;
+import weka.core.Instances;
+import weka.core.TestCaseWithIO;
+import weka.core.converters.ConverterUtils.DataSource;
+
+/**
+ * Tests {@link JSATRegressor}.
+ *
+ * @author FracPete (fracpete at waikato dot ac dot nz)
+ * @version $Revision$
+ */
+public class JSATRegressorTest
+  extends TestCaseWithIO {
+
+  /**
+   * Tests predicting from multiple threads.
+   */
+  public void testConcurrentPredictions() throws Exception {
+    Instances		data;
+    JSATRegressor	regressor;
+
+    data = DataSource.read(getInputStream("cpu.arff"));
+    data.setClassIndex(data.numAttributes() - 1);
+    regressor = new JSATRegressor();
+    regressor.buildClassifier(data);
+    JSATClassifierTest.checkConcurrentPredictions(regressor, data);
+  }
+
+  /**
+   * Tests predicting as batch, in parallel chunks.
+   */
+  public void testBatchPredictions() throws Exception {
+    Instances		data;
+    JSATRegressor	regressor;
+
+    data = DataSource.read(getInputStream("cpu.arff"));
+    data.setClassIndex(data.numAttributes() - 1);
+    regressor = new JSATRegressor();
+    regressor.setBatchSize("50");
+    regressor.setNumExecutionSlots(3);
+    regressor.buildClassifier(data);
+    JSATClassifierTest.checkBatchPredictions(regressor, data);
+  }
+
+  /**
+   * Tests that training with multiple execution slots generates the same
+   * predictions as training with a single thread.
+   */
+  public void testParallelBuild() throws Exception {
+    Instances		data;
+    JSATRegressor	sequential;
+    JSATRegressor	parallel;
+    int			i;
+
+    data = DataSource.read(getInputStream("cpu.arff"));
+    data.setClassIndex(data.numAttributes() - 1);
+    sequential = new JSATRegressor();
+    sequential.setRegressor(new jsat.classifiers.trees.DecisionTree());
+    sequential.buildClassifier(data);
+    parallel = new JSATRegressor();
+    parallel.setRegressor(new jsat.classifiers.trees.DecisionTree());
+    parallel.setNumExecutionSlots(2);
+    parallel.buildClassifier(data);
+
+    for (i = 0; i < data.numInstances(); i++)
+      assertEquals("row " + i,
+	sequential.classifyInstance(data.instance(i)), parallel.classifyInstance(data.instance(i)), 1e-8);
+  }
+
+  public static Test suite() {
+    return new TestSuite(JSATRegressorTest.class);
+  }
+
+  public static void main(String[] args){
+    TestRunner.run(suite());
+  }
+}
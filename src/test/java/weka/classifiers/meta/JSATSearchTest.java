@@ -0,0 +1,208 @@
+/*
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/**
+ * JSATSearchTest.java
+ * Copyright (C) 2017 University of Waikato, Hamilton, NZ
+ */
+
+package weka.classifiers.meta;
+
+import jsat.classifiers.ClassificationDataSet;
+import junit.framework.Test;
+import junit.framework.TestSuite;
+import junit.textui.TestRunner;
+import weka.core.Instances;
+import weka.core.TestCaseWithIO;
+import weka.core.WekaToJSAT;
+import weka.core.converters.ConverterUtils.DataSource;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Tests {@link JSATSearch}.
+ *
+ * @author FracPete (fracpete at waikato dot ac dot nz)
+ * @version $Revision$
+ */
+public class JSATSearchTest
+  extends TestCaseWithIO {
+
+  /**
+   * Tests the expansion of the parameter grid.
+   */
+  public void testExpandGrid() throws Exception {
+    List<String>	grid;
+
+    grid = JSATSearch.expandGrid("a @x@ @y@", new String[]{"x=1:5:2", "y=p,q"});
+    assertEquals(Arrays.asList("a 1 p", "a 1 q", "a 3 p", "a 3 q", "a 5 p", "a 5 q"), grid);
+
+    grid = JSATSearch.expandGrid("a @x@", new String[]{"x=0.5:1.0:0.25"});
+    assertEquals(Arrays.asList("a 0.5", "a 0.75", "a 1.0"), grid);
+  }
+
+  /**
+   * Tests that the folds are stratified and cover all rows exactly once.
+   */
+  public void testGenerateFolds() throws Exception {
+    Instances			data;
+    WekaToJSAT			conv;
+    ClassificationDataSet	dataset;
+    JSATSearch			search;
+    List<int[]>			trains;
+    List<int[]>			tests;
+    int[]			counts;
+    int[]			used;
+    int				fold;
+    int				i;
+
+    data = DataSource.read(getInputStream("anneal.arff"));
+    data.setClassIndex(data.numAttributes() - 1);
+    conv = new WekaToJSAT();
+    conv.initialize(data);
+    dataset = (ClassificationDataSet) conv.convertDataset(data);
+
+    search = new JSATSearch();
+    search.setFolds(5);
+    trains = new ArrayList<>();
+    tests  = new ArrayList<>();
+    search.generateFolds(dataset, trains, tests);
+    assertEquals("folds", 5, tests.size());
+    used = new int[dataset.getSampleSize()];
+    for (fold = 0; fold < tests.size(); fold++) {
+      assertEquals("rows " + fold, dataset.getSampleSize(), trains.get(fold).length + tests.get(fold).length);
+      counts = new int[data.numClasses()];
+      for (int index: tests.get(fold)) {
+	counts[dataset.getDataPointCategory(index)]++;
+	used[index]++;
+      }
+      for (i = 0; i < counts.length; i++)
+	assertTrue("class " + i + " in fold " + fold,
+	  Math.abs(counts[i] - data.attributeStats(data.classIndex()).nominalCounts[i] / 5.0) <= 1.0);
+    }
+    for (i = 0; i < used.length; i++)
+      assertEquals("row " + i, 1, used[i]);
+  }
+
+  /**
+   * Tests searching with a single thread and in parallel, which must
+   * select the same candidate.
+   */
+  public void testSearch() throws Exception {
+    Instances	data;
+    JSATSearch	search;
+    String	best;
+
+    data = DataSource.read(getInputStream("anneal.arff"));
+    data.setClassIndex(data.numAttributes() - 1);
+
+    search = new JSATSearch();
+    search.setClassifier("@cls@");
+    search.setParameters(new String[]{"cls=jsat.classifiers.bayesian.NaiveBayes,jsat.classifiers.trees.RandomForest"});
+    search.setFolds(3);
+    search.setEarlyTermination(0);
+    search.buildClassifier(data);
+    assertEquals("candidates", 2, search.m_Results.size());
+    best = search.m_Best.cmdline;
+    for (int i = 0; i < data.numInstances(); i++)
+      assertEquals("row " + i, data.numClasses(), search.distributionForInstance(data.instance(i)).length);
+
+    search.setNumExecutionSlots(2);
+    search.buildClassifier(data);
+    assertEquals("parallel", best, search.m_Best.cmdline);
+  }
+
+  /**
+   * Tests early termination, which prunes the weak candidates after the
+   * first fold, regardless of the number of threads.
+   */
+  public void testEarlyTermination() throws Exception {
+    Instances	data;
+    JSATSearch	search;
+    int		slots;
+    int		i;
+
+    data = DataSource.read(getInputStream("anneal.arff"));
+    data.setClassIndex(data.numAttributes() - 1);
+
+    search = new JSATSearch();
+    search.setClassifier("@cls@");
+    search.setParameters(new String[]{"cls=jsat.classifiers.trees.DecisionStump,jsat.classifiers.bayesian.NaiveBayes,jsat.classifiers.trees.DecisionTree"});
+    search.setFolds(3);
+    search.setEarlyTermination(1.5);
+    for (slots = 1; slots <= 3; slots++) {
+      search.setNumExecutionSlots(slots);
+      search.buildClassifier(data);
+      assertEquals("best (" + slots + ")", "jsat.classifiers.trees.DecisionTree", search.m_Best.cmdline);
+      for (i = 0; i < 2; i++) {
+	assertTrue("terminated " + i + " (" + slots + ")", search.m_Results.get(i).terminated);
+	assertEquals("folds " + i + " (" + slots + ")", 1, search.m_Results.get(i).folds);
+      }
+      assertEquals("folds best (" + slots + ")", 3, search.m_Best.folds);
+    }
+  }
+
+  /**
+   * Tests that a candidate with zero error on the first fold does not
+   * terminate all the others, as the eventual winner may be among them.
+   */
+  public void testEarlyTerminationZeroError() throws Exception {
+    JSATSearch			search;
+    JSATSearch.Result		result;
+    double[][]			errors;
+    int				fold;
+    int				i;
+
+    // mean errors after the first and second fold
+    errors = new double[][]{
+      {0.0, 0.1, 0.5},
+      {0.3, 0.1, 0.5},
+    };
+    search = new JSATSearch();
+    search.setEarlyTermination(1.5);
+    search.m_Results = new ArrayList<>();
+    for (i = 0; i < errors[0].length; i++)
+      search.m_Results.add(new JSATSearch.Result("candidate-" + i));
+
+    for (fold = 0; fold < errors.length; fold++) {
+      for (i = 0; i < errors[fold].length; i++) {
+	result = search.m_Results.get(i);
+	if (result.isComplete()) {
+	  result.error = errors[fold][i];
+	  result.folds++;
+	}
+      }
+      search.terminateCandidates();
+      if (fold == 0) {
+	for (i = 0; i < errors[fold].length; i++)
+	  assertFalse("terminated after zero error " + i, search.m_Results.get(i).terminated);
+      }
+    }
+
+    assertTrue("terminated 0", search.m_Results.get(0).terminated);
+    assertFalse("terminated 1", search.m_Results.get(1).terminated);
+    assertTrue("terminated 2", search.m_Results.get(2).terminated);
+  }
+
+  public static Test suite() {
+    return new TestSuite(JSATSearchTest.class);
+  }
+
+  public static void main(String[] args){
+    TestRunner.run(suite());
+  }
+}
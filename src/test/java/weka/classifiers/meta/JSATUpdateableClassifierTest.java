@@ -0,0 +1,127 @@
+/*
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/**
+ * JSATUpdateableClassifierTest.java
+ * Copyright (C) 2017 University of Waikato, Hamilton, NZ
+ */
+
+package weka.classifiers.meta;
+
+import jsat.classifiers.bayesian.NaiveBayesUpdateable;
+import jsat.classifiers.trees.DecisionTree;
+import junit.framework.Test;
+import junit.framework.TestSuite;
+import junit.textui.TestRunner;
+import weka.core.Instances;
+import weka.core.TestCaseWithIO;
+import weka.core.Utils;
+import weka.core.converters.ConverterUtils.DataSource;
+
+/**
+ * Tests {@link JSATUpdateableClassifier}.
+ *
+ * @author FracPete (fracpete at waikato dot ac dot nz)
+ * @version $Revision$
+ */
+public class JSATUpdateableClassifierTest
+  extends TestCaseWithIO {
+
+  /**
+   * Tests training on the header and then row by row, which must predict
+   * the same as training on the full data in one go.
+   */
+  public void testIncremental() throws Exception {
+    Instances			data;
+    JSATUpdateableClassifier	incremental;
+    JSATClassifier		batch;
+    double[]			expected;
+    double[]			actual;
+    int				i;
+    int				n;
+
+    data = DataSource.read(getInputStream("anneal.arff"));
+    data.setClassIndex(data.numAttributes() - 1);
+
+    incremental = new JSATUpdateableClassifier();
+    incremental.setClassifier(new NaiveBayesUpdateable());
+    incremental.buildClassifier(new Instances(data, 0));
+    for (i = 0; i < data.numInstances(); i++)
+      incremental.updateClassifier(data.instance(i));
+
+    batch = new JSATClassifier();
+    batch.setClassifier(new NaiveBayesUpdateable());
+    batch.buildClassifier(data);
+
+    for (i = 0; i < data.numInstances(); i++) {
+      expected = batch.distributionForInstance(data.instance(i));
+      actual   = incremental.distributionForInstance(data.instance(i));
+      assertEquals("row " + i + ", classes", expected.length, actual.length);
+      for (n = 0; n < expected.length; n++)
+	assertEquals("row " + i + ", class " + n, expected[n], actual[n], 1e-6);
+    }
+  }
+
+  /**
+   * Tests that a JSAT classifier that is not updateable gets rejected.
+   */
+  public void testNotUpdateable() throws Exception {
+    Instances			data;
+    JSATUpdateableClassifier	classifier;
+
+    data = DataSource.read(getInputStream("anneal.arff"));
+    data.setClassIndex(data.numAttributes() - 1);
+
+    classifier = new JSATUpdateableClassifier();
+    classifier.setClassifier(new DecisionTree());
+    try {
+      classifier.buildClassifier(data);
+      fail("Non-updateable JSAT classifier accepted");
+    }
+    catch (IllegalStateException e) {
+      assertEquals(
+	"JSAT classifier does not implement " + jsat.classifiers.UpdateableClassifier.class.getName()
+	  + ": " + DecisionTree.class.getName(),
+	e.getMessage());
+    }
+  }
+
+  /**
+   * Tests that the options for views, conversion cache and execution slots
+   * are omitted.
+   */
+  public void testOptions() throws Exception {
+    JSATUpdateableClassifier	classifier;
+    String			options;
+
+    classifier = new JSATUpdateableClassifier();
+    classifier.setOptions(new String[]{"-use-views", "-conversion-cache", "-num-slots", "4"});
+    assertFalse("views", classifier.getUseViews());
+    assertFalse("conversion cache", classifier.getUseConversionCache());
+    assertEquals("slots", 1, classifier.getNumExecutionSlots());
+    options = Utils.joinOptions(classifier.getOptions());
+    assertFalse("views option", options.contains("-use-views"));
+    assertFalse("conversion cache option", options.contains("-conversion-cache"));
+    assertFalse("slots option", options.contains("-num-slots"));
+  }
+
+  public static Test suite() {
+    return new TestSuite(JSATUpdateableClassifierTest.class);
+  }
+
+  public static void main(String[] args){
+    TestRunner.run(suite());
+  }
+}
@@ -0,0 +1,109 @@
+/*
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/**
+ * JSATUpdateableRegressorTest.java
+ * Copyright (C) 2017 University of Waikato, Hamilton, NZ
+ */
+
+package weka.classifiers.meta;
+
+import junit.framework.Test;
+import junit.framework.TestSuite;
+import junit.textui.TestRunner;
+import weka.core.Instance;
+import weka.core.Instances;
+import weka.core.TestCaseWithIO;
+import weka.core.Utils;
+import weka.core.converters.ConverterUtils.DataSource;
+
+/**
+ * Tests {@link JSATUpdateableRegressor}.
+ *
+ * @author FracPete (fracpete at waikato dot ac dot nz)
+ * @version $Revision$
+ */
+public class JSATUpdateableRegressorTest
+  extends TestCaseWithIO {
+
+  /**
+   * Tests training on the header and then row by row. The model must learn
+   * from the rows, skip rows with missing target and predict the same as
+   * training on the full data in one go (same order of the rows).
+   */
+  public void testIncremental() throws Exception {
+    Instances			data;
+    JSATUpdateableRegressor	incremental;
+    JSATUpdateableRegressor	batch;
+    Instance			missing;
+    double[]			initial;
+    int				changed;
+    int				i;
+
+    data = DataSource.read(getInputStream("cpu.arff"));
+    data.setClassIndex(data.numAttributes() - 1);
+
+    incremental = new JSATUpdateableRegressor();
+    incremental.buildClassifier(new Instances(data, 0));
+    initial = new double[data.numInstances()];
+    for (i = 0; i < data.numInstances(); i++)
+      initial[i] = incremental.classifyInstance(data.instance(i));
+    for (i = 0; i < data.numInstances(); i++) {
+      incremental.updateClassifier(data.instance(i));
+      missing = (Instance) data.instance(i).copy();
+      missing.setClassMissing();
+      incremental.updateClassifier(missing);
+    }
+
+    batch = new JSATUpdateableRegressor();
+    batch.buildClassifier(data);
+
+    changed = 0;
+    for (i = 0; i < data.numInstances(); i++) {
+      assertEquals("row " + i,
+	batch.classifyInstance(data.instance(i)), incremental.classifyInstance(data.instance(i)), 1e-8);
+      if (Math.abs(initial[i] - incremental.classifyInstance(data.instance(i))) > 1e-8)
+	changed++;
+    }
+    assertTrue("predictions changed by training", changed > 0);
+  }
+
+  /**
+   * Tests that the options for views, conversion cache and execution slots
+   * are omitted.
+   */
+  public void testOptions() throws Exception {
+    JSATUpdateableRegressor	regressor;
+    String			options;
+
+    regressor = new JSATUpdateableRegressor();
+    regressor.setOptions(new String[]{"-use-views", "-conversion-cache", "-num-slots", "4"});
+    assertFalse("views", regressor.getUseViews());
+    assertFalse("conversion cache", regressor.getUseConversionCache());
+    assertEquals("slots", 1, regressor.getNumExecutionSlots());
+    options = Utils.joinOptions(regressor.getOptions());
+    assertFalse("views option", options.contains("-use-views"));
+    assertFalse("conversion cache option", options.contains("-conversion-cache"));
+    assertFalse("slots option", options.contains("-num-slots"));
+  }
+
+  public static Test suite() {
+    return new TestSuite(JSATUpdateableRegressorTest.class);
+  }
+
+  public static void main(String[] args){
+    TestRunner.run(suite());
+  }
+}
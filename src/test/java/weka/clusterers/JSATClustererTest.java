@@ -0,0 +1,207 @@
+/*
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/**
+ * JSATClustererTest.java
+ * Copyright (C) 2017 University of Waikato, Hamilton, NZ
+ */
+
+package weka.clusterers;
+
+import jsat.DataSet;
+import jsat.clustering.ClustererBase;
+import junit.framework.Test;
+import junit.framework.TestSuite;
+import junit.textui.TestRunner;
+import weka.core.Attribute;
+import weka.core.DenseInstance;
+import weka.core.Instances;
+import weka.core.TestCaseWithIO;
+import weka.core.converters.ConverterUtils.DataSource;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.concurrent.ExecutorService;
+
+/**
+ * Tests {@link JSATClusterer}.
+ *
+ * @author FracPete (fracpete at waikato dot ac dot nz)
+ * @version $Revision$
+ */
+public class JSATClustererTest
+  extends TestCaseWithIO {
+
+  /**
+   * Dummy clusterer that considers all rows noise.
+   */
+  public static class NoiseClusterer
+    extends ClustererBase {
+
+    private static final long serialVersionUID = 3181430713924582117L;
+
+    @Override
+    public int[] cluster(DataSet dataSet, int[] designations) {
+      if (designations == null)
+	designations = new int[dataSet.getSampleSize()];
+      Arrays.fill(designations, -1);
+      return designations;
+    }
+
+    @Override
+    public int[] cluster(DataSet dataSet, ExecutorService threadpool, int[] designations) {
+      return cluster(dataSet, designations);
+    }
+
+    @Override
+    public NoiseClusterer clone() {
+      return new NoiseClusterer();
+    }
+  }
+
+  /**
+   * Dummy clusterer that assigns the rows to fixed clusters.
+   */
+  public static class FixedClusterer
+    extends ClustererBase {
+
+    private static final long serialVersionUID = -4425637105398157733L;
+
+    /** the cluster per row. */
+    protected int[] m_Assignments;
+
+    public FixedClusterer(int[] assignments) {
+      m_Assignments = assignments.clone();
+    }
+
+    @Override
+    public int[] cluster(DataSet dataSet, int[] designations) {
+      if (designations == null)
+	designations = new int[dataSet.getSampleSize()];
+      System.arraycopy(m_Assignments, 0, designations, 0, m_Assignments.length);
+      return designations;
+    }
+
+    @Override
+    public int[] cluster(DataSet dataSet, ExecutorService threadpool, int[] designations) {
+      return cluster(dataSet, designations);
+    }
+
+    @Override
+    public FixedClusterer clone() {
+      return new FixedClusterer(m_Assignments);
+    }
+  }
+
+  /**
+   * Tests clustering with the default clusterer.
+   */
+  public void testCluster() throws Exception {
+    Instances		data;
+    JSATClusterer	clusterer;
+    int			cluster;
+    int			i;
+
+    data = DataSource.read(getInputStream("cpu.arff"));
+    clusterer = new JSATClusterer();
+    clusterer.buildClusterer(data);
+    assertTrue("clusters", clusterer.numberOfClusters() > 0);
+    for (i = 0; i < data.numInstances(); i++) {
+      cluster = clusterer.clusterInstance(data.instance(i));
+      assertTrue("row " + i, (cluster >= 0) && (cluster < clusterer.numberOfClusters()));
+      assertEquals("row " + i, clusterer.numberOfClusters(), clusterer.distributionForInstance(data.instance(i)).length);
+    }
+  }
+
+  /**
+   * Tests that the centroids take the instance weights into account and
+   * that empty clusters get dropped.
+   */
+  public void testWeightedCentroids() throws Exception {
+    Instances			data;
+    ArrayList<Attribute>	atts;
+    JSATClusterer		clusterer;
+
+    atts = new ArrayList<>();
+    atts.add(new Attribute("x"));
+    data = new Instances("weighted", atts, 3);
+    data.add(new DenseInstance(1.0, new double[]{0.0}));
+    data.add(new DenseInstance(3.0, new double[]{10.0}));
+    data.add(new DenseInstance(1.0, new double[]{100.0}));
+
+    // cluster 1 stays empty
+    clusterer = new JSATClusterer();
+    clusterer.setClusterer(new FixedClusterer(new int[]{0, 0, 2}));
+    clusterer.buildClusterer(data);
+    assertEquals("clusters", 2, clusterer.numberOfClusters());
+    assertEquals("centroid 0", 7.5, clusterer.m_Centroids[0].get(0), 1e-8);
+    assertEquals("centroid 1", 100.0, clusterer.m_Centroids[1].get(0), 1e-8);
+    assertEquals("row 0", 0, clusterer.clusterInstance(data.instance(0)));
+    assertEquals("row 2", 1, clusterer.clusterInstance(data.instance(2)));
+  }
+
+  /**
+   * Tests that a clusterer considering all rows noise results in an error.
+   */
+  public void testAllNoise() throws Exception {
+    Instances		data;
+    JSATClusterer	clusterer;
+
+    data = DataSource.read(getInputStream("cpu.arff"));
+    clusterer = new JSATClusterer();
+    clusterer.setClusterer(new NoiseClusterer());
+    try {
+      clusterer.buildClusterer(data);
+      fail("all noise should fail");
+    }
+    catch (IllegalStateException e) {
+      // expected
+    }
+  }
+
+  /**
+   * Tests that data without numeric attributes results in an error.
+   */
+  public void testNominalOnly() throws Exception {
+    Instances			data;
+    ArrayList<Attribute>	atts;
+    JSATClusterer		clusterer;
+    int				i;
+
+    atts = new ArrayList<>();
+    atts.add(new Attribute("a", Arrays.asList("x", "y")));
+    atts.add(new Attribute("b", Arrays.asList("x", "y", "z")));
+    data = new Instances("nominal", atts, 10);
+    for (i = 0; i < 10; i++)
+      data.add(new DenseInstance(1.0, new double[]{i % 2, i % 3}));
+
+    clusterer = new JSATClusterer();
+    try {
+      clusterer.buildClusterer(data);
+      fail("nominal-only data should fail");
+    }
+    catch (IllegalArgumentException e) {
+      // expected
+    }
+  }
+
+  public static Test suite() {
+    return new TestSuite(JSATClustererTest.class);
+  }
+
+  public static void main(String[] args){
+    TestRunner.run(suite());
+  }
+}
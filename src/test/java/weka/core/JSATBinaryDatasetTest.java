@@ -0,0 +1,227 @@
+/*
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/**
+ * JSATBinaryDatasetTest.java
+ * Copyright (C) 2017 University of Waikato, Hamilton, NZ
+ */
+
+package weka.core;
+
+import jsat.DataSet;
+import jsat.classifiers.ClassificationDataSet;
+import jsat.classifiers.DataPoint;
+import jsat.linear.DenseVector;
+import jsat.linear.Vec;
+import jsat.regression.RegressionDataSet;
+import junit.framework.Test;
+import junit.framework.TestSuite;
+import junit.textui.TestRunner;
+import weka.core.converters.ConverterUtils.DataSource;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.InputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.OutputStream;
+import java.util.Arrays;
+
+/**
+ * Tests {@link JSATBinaryDataset}.
+ *
+ * @author FracPete (fracpete at waikato dot ac dot nz)
+ * @version $Revision$
+ */
+public class JSATBinaryDatasetTest
+  extends TestCaseWithIO {
+
+  /**
+   * Converts the dataset, writes it to a binary file and maps it again.
+   *
+   * @param name	the dataset to use
+   * @param hasClass	whether to set the last attribute as class
+   * @throws Exception	if conversion or writing/reading fails
+   */
+  protected void checkRoundTrip(String name, boolean hasClass) throws Exception {
+    Instances	input;
+    WekaToJSAT	conv;
+    DataSet	expected;
+    DataSet	actual;
+    DataPoint	exp;
+    DataPoint	act;
+    File	file;
+    int		i;
+    int		n;
+
+    input = DataSource.read(getInputStream(name));
+    if (hasClass)
+      input.setClassIndex(input.numAttributes() - 1);
+    conv = new WekaToJSAT();
+    conv.initialize(input);
+    expected = conv.convertDataset(input);
+
+    file = File.createTempFile("jsat", JSATBinaryDataset.EXTENSION);
+    try {
+      JSATBinaryDataset.write(expected, file);
+      actual = JSATBinaryDataset.read(file);
+
+      assertEquals(name + ": type", expected.getClass(), actual.getClass());
+      assertEquals(name + ": rows", expected.getSampleSize(), actual.getSampleSize());
+      assertEquals(name + ": numeric", expected.getNumNumericalVars(), actual.getNumNumericalVars());
+      assertEquals(name + ": categorical", expected.getNumCategoricalVars(), actual.getNumCategoricalVars());
+      for (i = 0; i < expected.getNumNumericalVars(); i++)
+	assertEquals(name + ": numeric name " + i, expected.getNumericName(i), actual.getNumericName(i));
+      for (i = 0; i < expected.getSampleSize(); i++) {
+	exp = expected.getDataPoint(i);
+	act = actual.getDataPoint(i);
+	for (n = 0; n < expected.getNumNumericalVars(); n++)
+	  assertEquals(name + ": row " + i + ", numeric " + n,
+	    exp.getNumericalValues().get(n), act.getNumericalValues().get(n));
+	assertTrue(name + ": row " + i + ", categorical",
+	  Arrays.equals(exp.getCategoricalValues(), act.getCategoricalValues()));
+	assertEquals(name + ": row " + i + ", weight", exp.getWeight(), act.getWeight());
+	if (expected instanceof ClassificationDataSet)
+	  assertEquals(name + ": row " + i + ", class",
+	    ((ClassificationDataSet) expected).getDataPointCategory(i),
+	    ((ClassificationDataSet) actual).getDataPointCategory(i));
+	else if (expected instanceof RegressionDataSet)
+	  assertEquals(name + ": row " + i + ", target",
+	    ((RegressionDataSet) expected).getTargetValue(i),
+	    ((RegressionDataSet) actual).getTargetValue(i));
+      }
+    }
+    finally {
+      file.delete();
+    }
+  }
+
+  /**
+   * Tests writing and mapping datasets without class, with categorical
+   * class and with numeric class.
+   */
+  public void testRoundTrip() throws Exception {
+    checkRoundTrip("anneal.arff", false);
+    checkRoundTrip("anneal.arff", true);
+    checkRoundTrip("cpu.arff", true);
+  }
+
+  /**
+   * Tests loading a dataset file, which creates the cache file, reuses it
+   * while up-to-date and re-creates it when outdated.
+   */
+  public void testLoad() throws Exception {
+    File		file;
+    File		cache;
+    InputStream		in;
+    OutputStream	out;
+    DataSet		data;
+    byte[]		buffer;
+    long		modified;
+    int			len;
+
+    file  = File.createTempFile("jsat", ".arff");
+    cache = JSATBinaryDataset.getCacheFile(file, 38);
+    try {
+      in  = getInputStream("anneal.arff");
+      out = new FileOutputStream(file);
+      buffer = new byte[8192];
+      while ((len = in.read(buffer)) > 0)
+	out.write(buffer, 0, len);
+      out.close();
+      in.close();
+
+      // create
+      data = JSATBinaryDataset.load(file, 38);
+      assertTrue("cache created", cache.exists());
+      assertTrue("classification", data instanceof ClassificationDataSet);
+      assertEquals("rows", 898, data.getSampleSize());
+
+      // reuse
+      modified = file.lastModified() + 10000;
+      cache.setLastModified(modified);
+      data = JSATBinaryDataset.load(file, 38);
+      assertEquals("cache reused", modified, cache.lastModified());
+      assertEquals("rows (reused)", 898, data.getSampleSize());
+
+      // re-create
+      modified = file.lastModified() - 10000;
+      cache.setLastModified(modified);
+      data = JSATBinaryDataset.load(file, 38);
+      assertTrue("cache re-created", cache.lastModified() != modified);
+      assertEquals("rows (re-created)", 898, data.getSampleSize());
+    }
+    finally {
+      file.delete();
+      cache.delete();
+    }
+  }
+
+  /**
+   * Tests that serializing a mapped dataset row results in a dense copy
+   * of its values.
+   */
+  public void testSerializeRow() throws Exception {
+    Instances			input;
+    WekaToJSAT			conv;
+    DataSet			data;
+    Vec				mapped;
+    Vec				copy;
+    ByteArrayOutputStream	bos;
+    ObjectOutputStream		oos;
+    ObjectInputStream		ois;
+    File			file;
+    int				i;
+
+    input = DataSource.read(getInputStream("cpu.arff"));
+    input.setClassIndex(input.numAttributes() - 1);
+    conv = new WekaToJSAT();
+    conv.initialize(input);
+
+    file = File.createTempFile("jsat", JSATBinaryDataset.EXTENSION);
+    try {
+      JSATBinaryDataset.write(conv.convertDataset(input), file);
+      data   = JSATBinaryDataset.read(file);
+      mapped = data.getDataPoint(10).getNumericalValues();
+      assertTrue("mapped", mapped instanceof JSATBinaryDataset.MappedRowVector);
+
+      bos = new ByteArrayOutputStream();
+      oos = new ObjectOutputStream(bos);
+      oos.writeObject(mapped);
+      oos.close();
+      ois  = new ObjectInputStream(new ByteArrayInputStream(bos.toByteArray()));
+      copy = (Vec) ois.readObject();
+      ois.close();
+
+      assertTrue("dense", copy instanceof DenseVector);
+      assertEquals("length", mapped.length(), copy.length());
+      for (i = 0; i < mapped.length(); i++)
+	assertEquals("value " + i, mapped.get(i), copy.get(i));
+    }
+    finally {
+      file.delete();
+    }
+  }
+
+  public static Test suite() {
+    return new TestSuite(JSATBinaryDatasetTest.class);
+  }
+
+  public static void main(String[] args){
+    TestRunner.run(suite());
+  }
+}
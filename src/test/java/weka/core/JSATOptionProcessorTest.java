@@ -0,0 +1,70 @@
+/*
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/**
+ * JSATOptionProcessorTest.java
+ * Copyright (C) 2017 University of Waikato, Hamilton, NZ
+ */
+
+package weka.core;
+
+import jsat.classifiers.trees.RandomForest;
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+import junit.textui.TestRunner;
+
+/**
+ * Tests {@link JSATOptionProcessor}.
+ *
+ * @author FracPete (fracpete at waikato dot ac dot nz)
+ * @version $Revision$
+ */
+public class JSATOptionProcessorTest
+  extends TestCase {
+
+  /**
+   * Tests that cached command-lines result in copies with the same
+   * configuration.
+   */
+  public void testCachedParsing() throws Exception {
+    JSATOptionProcessor	proc;
+    String		cmdline;
+    Object		first;
+    Object		second;
+
+    proc    = new JSATOptionProcessor();
+    cmdline = proc.toCommandline(new RandomForest(20));
+    first   = proc.fromCommandline(cmdline);
+    second  = proc.fromCommandline(cmdline);
+
+    assertTrue("type", first instanceof RandomForest);
+    assertNotSame("copy", first, second);
+    assertEquals("first", cmdline, proc.toCommandline(first));
+    assertEquals("second", cmdline, proc.toCommandline(second));
+
+    // modifying a copy must not affect the cache
+    ((RandomForest) first).setMaxForestSize(5);
+    assertEquals("cache", cmdline, proc.toCommandline(proc.fromCommandline(cmdline)));
+  }
+
+  public static Test suite() {
+    return new TestSuite(JSATOptionProcessorTest.class);
+  }
+
+  public static void main(String[] args){
+    TestRunner.run(suite());
+  }
+}
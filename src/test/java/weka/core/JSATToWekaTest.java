@@ -23,7 +23,9 @@ package weka.core;
 import jsat.ARFFLoader;
 import jsat.DataSet;
 import jsat.SimpleDataSet;
+import jsat.classifiers.CategoricalData;
 import jsat.classifiers.DataPoint;
+import jsat.linear.SparseVector;
 import junit.framework.Test;
 import junit.framework.TestSuite;
 import junit.textui.TestRunner;
@@ -104,6 +106,63 @@ public class JSATToWekaTest
     reg.diff();
   }
 
+  /**
+   * Tests whether sparse vectors get turned into sparse instances.
+   */
+  public void testConvertSparse() throws Exception {
+    SimpleDataSet	input;
+    Instances		output;
+    JSATToWeka		conv;
+    SparseVector	vec;
+    int			i;
+
+    input = new SimpleDataSet(new CategoricalData[0], 1000);
+    for (i = 0; i < 10; i++) {
+      vec = new SparseVector(1000);
+      vec.set(i, i + 1);
+      vec.set(999 - i, -(i + 1));
+      input.add(new DataPoint(vec, new int[0], new CategoricalData[0], 1.0));
+    }
+
+    conv = new JSATToWeka();
+    conv.initialize(input);
+    output = conv.convertDataset(input);
+    assertEquals("rows", 10, output.numInstances());
+    for (i = 0; i < output.numInstances(); i++) {
+      assertTrue("sparse instance", output.instance(i) instanceof SparseInstance);
+      assertEquals("non-zero values", 2, output.instance(i).numValues());
+      assertEquals("value", i + 1.0, output.instance(i).value(i));
+      assertEquals("value", -(i + 1.0), output.instance(i).value(999 - i));
+      assertEquals("value", 0.0, output.instance(i).value(500));
+    }
+    assertTrue("sparse instance", conv.convertRow(input.getDataPoint(0)) instanceof SparseInstance);
+  }
+
+  /**
+   * Tests whether parallel conversion generates the same output as
+   * sequential conversion.
+   */
+  public void testConvertDatasetParallel() throws Exception {
+    DataSet 		input;
+    JSATToWeka		conv;
+    String		sequential;
+    String		parallel;
+
+    input = ARFFLoader.loadArffFile(getReader("anneal.arff"));
+    input = ((SimpleDataSet) input).asClassificationDataSet(input.getNumCategoricalVars() - 1);
+    conv  = new JSATToWeka();
+    conv.initialize(input);
+    sequential = conv.convertDataset(input).toString();
+    conv.setParallel(true);
+    conv.setParallelThreshold(1);
+    conv.setMinChunkSize(50);
+    parallel = conv.convertDataset(input).toString();
+    assertEquals("parallel", sequential, parallel);
+    conv.setNumThreads(3);
+    parallel = conv.convertDataset(input).toString();
+    assertEquals("parallel with own pool", sequential, parallel);
+  }
+
   public static Test suite() {
     return new TestSuite(JSATToWekaTest.class);
   }
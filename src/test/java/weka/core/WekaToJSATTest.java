@@ -26,6 +26,16 @@ import junit.framework.Test;
 import junit.framework.TestSuite;
 import junit.textui.TestRunner;
 import weka.core.converters.ConverterUtils.DataSource;
+import weka.filters.Filter;
+import weka.filters.unsupervised.instance.NonSparseToSparse;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
 
 /**
  * Tests {@link WekaToJSAT} converter.
@@ -123,6 +133,338 @@ public class WekaToJSATTest
     reg.diff();
   }
 
+  /**
+   * Tests whether views on the Weka data generate the same output as copies.
+   */
+  public void testConvertDatasetWithViews() throws Exception {
+    Instances 		input;
+    WekaToJSAT		conv;
+    String		copied;
+    String		viewed;
+
+    conv = new WekaToJSAT();
+
+    // nominal and numeric attributes interleaved -> shared storage
+    input = DataSource.read(getInputStream("anneal.arff"));
+    input.setClassIndex(input.numAttributes() - 1);
+    conv.initialize(input);
+    copied = toString(conv.convertDataset(input));
+    conv.setUseViews(true);
+    conv.initialize(input);
+    viewed = toString(conv.convertDataset(input));
+    assertEquals("anneal", copied, viewed);
+
+    // contiguous numeric attributes -> wrapping Weka values
+    conv.setUseViews(false);
+    input = DataSource.read(getInputStream("cpu.arff"));
+    input.deleteAttributeAt(0);
+    input.setClassIndex(input.numAttributes() - 1);
+    conv.initialize(input);
+    copied = toString(conv.convertDataset(input));
+    conv.setUseViews(true);
+    conv.initialize(input);
+    viewed = toString(conv.convertDataset(input));
+    assertEquals("cpu", copied, viewed);
+  }
+
+  /**
+   * Tests whether {@link WekaToJSAT#convertRowBuffered(Instance)} generates
+   * the same output as {@link WekaToJSAT#convertRow(Instance)}.
+   */
+  public void testConvertRowBuffered() throws Exception {
+    Instances 		input;
+    WekaToJSAT		conv;
+    DataPoint		buffer;
+    int			i;
+
+    conv  = new WekaToJSAT();
+    input = DataSource.read(getInputStream("anneal.arff"));
+    input.setClassIndex(input.numAttributes() - 1);
+    conv.initialize(input);
+    buffer = null;
+    for (i = 0; i < input.numInstances(); i++) {
+      if (buffer == null)
+	buffer = conv.convertRowBuffered(input.instance(i));
+      else
+	assertSame("buffer not reused", buffer, conv.convertRowBuffered(input.instance(i)));
+      assertEquals("row " + i, conv.convertRow(input.instance(i)).toString(), buffer.toString());
+    }
+  }
+
+  /**
+   * Tests whether sparse instances get converted into sparse vectors with
+   * the same values as their dense counterparts.
+   */
+  public void testConvertSparse() throws Exception {
+    Instances 		dense;
+    Instances 		sparse;
+    WekaToJSAT		conv;
+    DataSet		denseOut;
+    DataSet		sparseOut;
+    NonSparseToSparse	filter;
+    int			i;
+    int			n;
+
+    conv  = new WekaToJSAT();
+    dense = DataSource.read(getInputStream("anneal.arff"));
+    dense.setClassIndex(dense.numAttributes() - 1);
+    filter = new NonSparseToSparse();
+    filter.setInputFormat(dense);
+    sparse = Filter.useFilter(dense, filter);
+
+    conv.initialize(dense);
+    denseOut = conv.convertDataset(dense);
+    conv.initialize(sparse);
+    sparseOut = conv.convertDataset(sparse);
+    assertEquals("rows", denseOut.getSampleSize(), sparseOut.getSampleSize());
+    for (i = 0; i < denseOut.getSampleSize(); i++) {
+      assertTrue("sparse vector", sparseOut.getDataPoint(i).getNumericalValues().isSparse());
+      assertTrue("sparse vector", conv.convertRowBuffered(sparse.instance(i)).getNumericalValues().isSparse());
+      for (n = 0; n < denseOut.getNumNumericalVars(); n++) {
+	assertEquals("row " + i + ", numeric " + n,
+	  denseOut.getDataPoint(i).getNumericalValues().get(n),
+	  sparseOut.getDataPoint(i).getNumericalValues().get(n));
+	assertEquals("row " + i + ", numeric " + n,
+	  denseOut.getDataPoint(i).getNumericalValues().get(n),
+	  conv.convertRowBuffered(sparse.instance(i)).getNumericalValues().get(n));
+      }
+      assertTrue("row " + i + ", categorical", Arrays.equals(
+	denseOut.getDataPoint(i).getCategoricalValues(), sparseOut.getDataPoint(i).getCategoricalValues()));
+    }
+  }
+
+  /**
+   * Generates a scaled up copy of the dataset, with every 10th class value
+   * set to missing. The copies don't share their values with the original.
+   *
+   * @param data	the dataset to scale up
+   * @param factor	how many copies of the dataset to create
+   * @return		the scaled up dataset
+   */
+  protected Instances scaleUp(Instances data, int factor) {
+    Instances	result;
+    Instance	inst;
+    int		i;
+    int		n;
+
+    result = new Instances(data, data.numInstances() * factor);
+    for (n = 0; n < factor; n++) {
+      for (i = 0; i < data.numInstances(); i++) {
+	inst = new DenseInstance(data.instance(i).weight(), data.instance(i).toDoubleArray());
+	if (result.numInstances() % 10 == 0)
+	  inst.setValue(data.classIndex(), Utils.missingValue());
+	result.add(inst);
+      }
+    }
+
+    return result;
+  }
+
+  /**
+   * Tests whether skipping rows with missing class during conversion
+   * generates the same output as copying the data and removing those rows
+   * beforehand.
+   */
+  public void testSkipMissingClass() throws Exception {
+    Instances 		input;
+    Instances 		copy;
+    WekaToJSAT		conv;
+    DataSet		copied;
+    DataSet		skipped;
+
+    for (String dataset: new String[]{"anneal.arff", "cpu.arff"}) {
+      input = DataSource.read(getInputStream(dataset));
+      input.setClassIndex(input.numAttributes() - 1);
+      input = scaleUp(input, 100);
+      conv  = new WekaToJSAT();
+
+      // copy and delete
+      copy = new Instances(input);
+      copy.deleteWithMissingClass();
+      conv.initialize(copy);
+      copied = conv.convertDataset(copy);
+      assertTrue(dataset + ": copy removed rows", copy.numInstances() < input.numInstances());
+
+      // skip during conversion
+      conv.setSkipMissingClass(true);
+      conv.initialize(input);
+      skipped = conv.convertDataset(input);
+
+      assertEquals(dataset + ": rows", copied.getSampleSize(), skipped.getSampleSize());
+      assertEquals(dataset + ": data", toString(copied), toString(skipped));
+    }
+  }
+
+  /**
+   * Returns the number of bytes allocated so far by the current thread.
+   *
+   * @return		the bytes, -1 if not supported by the JVM
+   */
+  protected long allocatedBytes() {
+    ThreadMXBean	bean;
+
+    bean = ManagementFactory.getThreadMXBean();
+    if (!(bean instanceof com.sun.management.ThreadMXBean))
+      return -1;
+    if (!((com.sun.management.ThreadMXBean) bean).isThreadAllocatedMemoryEnabled())
+      return -1;
+
+    return ((com.sun.management.ThreadMXBean) bean).getThreadAllocatedBytes(Thread.currentThread().getId());
+  }
+
+  /**
+   * Tests that skipping rows with missing class during conversion needs
+   * less memory than copying the data and removing those rows beforehand.
+   * Uses the bytes allocated by the (sequential) conversion rather than the
+   * peak usage of the heap pools, as the latter depends on the timing of
+   * the garbage collection.
+   */
+  public void testSkipMissingClassMemory() throws Exception {
+    Instances 		input;
+    Instances 		copy;
+    WekaToJSAT		conv;
+    long		start;
+    long		copied;
+    long		skipped;
+    int			run;
+
+    if (allocatedBytes() == -1)
+      return;
+
+    input = DataSource.read(getInputStream("anneal.arff"));
+    input.setClassIndex(input.numAttributes() - 1);
+    input = scaleUp(input, 100);
+    conv  = new WekaToJSAT();
+
+    // second run gets measured, the first one loads the classes
+    copied  = 0;
+    skipped = 0;
+    for (run = 0; run < 2; run++) {
+      conv.setSkipMissingClass(false);
+      start = allocatedBytes();
+      copy  = new Instances(input);
+      copy.deleteWithMissingClass();
+      conv.initialize(copy);
+      conv.convertDataset(copy);
+      copied = allocatedBytes() - start;
+
+      conv.setSkipMissingClass(true);
+      start = allocatedBytes();
+      conv.initialize(input);
+      conv.convertDataset(input);
+      skipped = allocatedBytes() - start;
+    }
+
+    // at least the references to the copied rows must be saved
+    assertTrue("allocated: copy=" + copied + ", skip=" + skipped,
+      skipped + 4L * input.numInstances() <= copied);
+  }
+
+  /**
+   * Tests that the rows get split into chunks of at least the minimum
+   * chunk size, covering all rows.
+   */
+  public void testChunkSizes() throws Exception {
+    final List<Integer>	sizes;
+    ForkJoinPool	pool;
+    int			total;
+
+    sizes = Collections.synchronizedList(new ArrayList<Integer>());
+    pool  = new ForkJoinPool(4);
+    try {
+      pool.invoke(new AbstractJSATConversion.RowRangeTask(new AbstractJSATConversion.RowRangeProcessor() {
+	@Override
+	public void process(int from, int to) {
+	  sizes.add(to - from);
+	}
+      }, 0, 10000, 1000));
+    }
+    finally {
+      pool.shutdown();
+    }
+
+    total = 0;
+    for (int size: sizes) {
+      assertTrue("chunk size " + size, (size >= 1000) && (size < 2000));
+      total += size;
+    }
+    assertEquals("rows", 10000, total);
+  }
+
+  /**
+   * Tests whether parallel conversion generates the same output as
+   * sequential conversion.
+   */
+  public void testConvertDatasetParallel() throws Exception {
+    Instances 		input;
+    WekaToJSAT		conv;
+    String		sequential;
+    String		parallel;
+
+    input = DataSource.read(getInputStream("anneal.arff"));
+    input.setClassIndex(input.numAttributes() - 1);
+    input = scaleUp(input, 10);
+    conv  = new WekaToJSAT();
+    conv.setSkipMissingClass(true);
+    conv.initialize(input);
+    sequential = toString(conv.convertDataset(input));
+    conv.setParallel(true);
+    conv.setParallelThreshold(1);
+    conv.setMinChunkSize(100);
+    parallel = toString(conv.convertDataset(input));
+    assertEquals("parallel", sequential, parallel);
+    conv.setNumThreads(3);
+    parallel = toString(conv.convertDataset(input));
+    assertEquals("parallel with own pool", sequential, parallel);
+    conv.setUseViews(true);
+    parallel = toString(conv.convertDataset(input));
+    assertEquals("parallel with views", sequential, parallel);
+  }
+
+  /**
+   * Tests whether converting cross-validation folds with a cache generates
+   * the same output as without and whether the values of rows get reused
+   * across folds, with the rows themselves being copies.
+   */
+  public void testConvertDatasetCached() throws Exception {
+    Instances 		input;
+    Instances 		first;
+    Instances 		second;
+    WekaToJSAT		conv;
+    WekaToJSAT		cached;
+    DataSet		firstOut;
+    DataSet		secondOut;
+    int			i;
+
+    input = DataSource.read(getInputStream("anneal.arff"));
+    input.setClassIndex(input.numAttributes() - 1);
+    conv   = new WekaToJSAT();
+    conv.initialize(input);
+    cached = new WekaToJSAT();
+    cached.setCache(new JSATConversionCache());
+    cached.initialize(input);
+
+    for (i = 0; i < 10; i++) {
+      first = input.trainCV(10, i);
+      assertEquals("fold " + i, toString(conv.convertDataset(first)), toString(cached.convertDataset(first)));
+    }
+
+    // last row is part of the training set of the first two folds
+    first     = input.trainCV(10, 0);
+    second    = input.trainCV(10, 1);
+    firstOut  = cached.convertDataset(first);
+    secondOut = cached.convertDataset(second);
+    assertSame("values reused",
+      firstOut.getDataPoint(firstOut.getSampleSize() - 1).getNumericalValues(),
+      secondOut.getDataPoint(secondOut.getSampleSize() - 1).getNumericalValues());
+    assertNotSame("row copied",
+      firstOut.getDataPoint(firstOut.getSampleSize() - 1),
+      secondOut.getDataPoint(secondOut.getSampleSize() - 1));
+    firstOut.getDataPoint(firstOut.getSampleSize() - 1).setWeight(5.0);
+    assertEquals("weight unaffected", 1.0,
+      cached.convertDataset(second).getDataPoint(secondOut.getSampleSize() - 1).getWeight(), 1e-10);
+  }
+
   public static Test suite() {
     return new TestSuite(WekaToJSATTest.class);
   }
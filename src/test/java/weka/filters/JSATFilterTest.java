@@ -0,0 +1,70 @@
+/*
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/**
+ * JSATFilterTest.java
+ * Copyright (C) 2017 University of Waikato, Hamilton, NZ
+ */
+
+package weka.filters;
+
+import junit.framework.Test;
+import junit.framework.TestSuite;
+import junit.textui.TestRunner;
+import weka.core.Instances;
+import weka.core.TestCaseWithIO;
+import weka.core.converters.ConverterUtils.DataSource;
+
+/**
+ * Tests {@link JSATFilter}.
+ *
+ * @author FracPete (fracpete at waikato dot ac dot nz)
+ * @version $Revision$
+ */
+public class JSATFilterTest
+  extends TestCaseWithIO {
+
+  /**
+   * Tests filtering a batch and afterwards streaming the same instances.
+   */
+  public void testBatchThenStream() throws Exception {
+    Instances	input;
+    Instances	output;
+    JSATFilter	filter;
+    int		i;
+
+    input = DataSource.read(getInputStream("cpu.arff"));
+    input.setClassIndex(input.numAttributes() - 1);
+    filter = new JSATFilter();
+    filter.setInputFormat(input);
+    output = Filter.useFilter(input, filter);
+
+    assertEquals("rows", input.numInstances(), output.numInstances());
+    assertEquals("class", input.classAttribute().name(), output.classAttribute().name());
+
+    for (i = 0; i < input.numInstances(); i++) {
+      assertTrue("row " + i + " available", filter.input(input.instance(i)));
+      assertEquals("row " + i, output.instance(i).toString(), filter.output().toString());
+    }
+  }
+
+  public static Test suite() {
+    return new TestSuite(JSATFilterTest.class);
+  }
+
+  public static void main(String[] args){
+    TestRunner.run(suite());
+  }
+}